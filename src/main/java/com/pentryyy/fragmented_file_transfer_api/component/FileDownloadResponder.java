@@ -0,0 +1,350 @@
+package com.pentryyy.fragmented_file_transfer_api.component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.pentryyy.fragmented_file_transfer_api.transfer.receiver.FileAssembler;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// Отдача собранного файла: условные запросы по ETag (SHA-256 файла) и Last-Modified,
+// одиночные и множественные диапазоны. Весь файл и одиночный диапазон на Tomcat без TLS
+// отдаются через sendfile (FileChannel.transferTo в сокет), данные не проходят через кучу.
+// Иначе, и для multipart/byteranges, отрезки пишутся в поток ответа через FileChannel.transferTo
+@Component
+public class FileDownloadResponder {
+
+    private static final String SENDFILE_SUPPORT  = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START    = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END      = "org.apache.tomcat.sendfile.end";
+
+    // Отрезок файла [start, end)
+    private record Region(long start, long end) {
+        long length() {
+            return end - start;
+        }
+    }
+
+    public ResponseEntity<StreamingResponseBody> respond(
+        File file,
+        String fileDigest,
+        HttpServletRequest request,
+        HttpServletResponse response
+    ) {
+        long   length       = file.length();
+        long   lastModified = file.lastModified();
+        String etag         = fileDigest != null
+            ? "\"" + fileDigest + "\""
+            : "W/\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        // If-Match и If-Unmodified-Since Spring для GET не проверяет
+        if (!matchesPreconditions(request, etag, lastModified)) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).eTag(etag).build();
+        }
+
+        // If-None-Match, If-Modified-Since: 304. ETag и Last-Modified выставляются в ответ здесь же
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        if (webRequest.checkNotModified(etag, lastModified)) {
+            return ResponseEntity.status(response.getStatus()).build();
+        }
+
+        ContentDisposition contentDisposition = ContentDisposition
+            .attachment()
+            .filename(file.getName(), StandardCharsets.UTF_8)
+            .build();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, contentDisposition.toString());
+
+        List<Region> regions = parseRanges(request, etag, lastModified, length);
+        if (regions == null) {
+            return single(file, new Region(0, length), HttpStatus.OK, headers, request);
+        }
+
+        if (regions.isEmpty()) {
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                                 .headers(headers)
+                                 .build();
+        }
+
+        if (regions.size() == 1) {
+            Region region = regions.get(0);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + region.start() + "-" + (region.end() - 1) + "/" + length);
+            return single(file, region, HttpStatus.PARTIAL_CONTENT, headers, request);
+        }
+        return multipart(file, regions, length, headers, request);
+    }
+
+    // Прогрессивная отдача во время сборки: ответ начинается с первым чанком и идет
+    // по непрерывному префиксу, на дыре поток ждет ее заполнения. Диапазоны и ETag
+    // здесь не поддерживаются: контрольная сумма известна только в конце передачи
+    public ResponseEntity<StreamingResponseBody> respondProgressive(
+        FileAssembler assembler,
+        String fileName,
+        HttpServletRequest request
+    ) {
+        long available = join(assembler.awaitPrefix(0));
+
+        ContentDisposition contentDisposition = ContentDisposition
+            .attachment()
+            .filename(fileName, StandardCharsets.UTF_8)
+            .build();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "none");
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, contentDisposition.toString());
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+
+        // Длина известна, если метаданные пришли до первого чанка, иначе ответ идет частями
+        long length = assembler.getFileSize();
+        if (length >= 0) {
+            headers.setContentLength(length);
+        }
+
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return ResponseEntity.ok().headers(headers).build();
+        }
+
+        return ResponseEntity.ok()
+                             .headers(headers)
+                             .body(output -> transferPrefix(assembler, available, output));
+    }
+
+    // null - отдать файл целиком (заголовка нет, он некорректен или не прошел If-Range),
+    // пустой список - ни один диапазон не попадает в файл
+    private List<Region> parseRanges(HttpServletRequest request, String etag, long lastModified, long length) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || !matchesIfRange(request, etag, lastModified)) {
+            return null;
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        List<Region> regions = new ArrayList<>(ranges.size());
+        long         total   = 0;
+        for (HttpRange range : ranges) {
+            if (length == 0) {
+                continue;
+            }
+
+            // Диапазон за концом файла пропускается, остальные отдаются
+            long start = range.getRangeStart(length);
+            long end   = range.getRangeEnd(length) + 1;
+            if (start >= length || end <= start) {
+                continue;
+            }
+            regions.add(new Region(start, end));
+            total += end - start;
+        }
+
+        // Перекрывающиеся диапазоны суммарно больше файла: отдаем файл целиком
+        return total > length ? null : regions;
+    }
+
+    // If-Match сравнивает ETag строго, If-Unmodified-Since учитывается только без If-Match
+    private boolean matchesPreconditions(HttpServletRequest request, String etag, long lastModified) {
+        String ifMatch = request.getHeader(HttpHeaders.IF_MATCH);
+        if (ifMatch != null) {
+            if (ifMatch.trim().equals("*")) {
+                return true;
+            }
+            if (etag.startsWith("W/")) {
+                return false;
+            }
+            for (String candidate : ifMatch.split(",")) {
+                if (candidate.trim().equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        try {
+            long ifUnmodifiedSince = request.getDateHeader(HttpHeaders.IF_UNMODIFIED_SINCE);
+            return ifUnmodifiedSince == -1 || lastModified / 1000 <= ifUnmodifiedSince / 1000;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    // If-Range: диапазон отдается, только если файл не менялся (строгий ETag или точная дата)
+    private boolean matchesIfRange(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return !etag.startsWith("W/") && ifRange.equals(etag);
+        }
+
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> single(
+        File file,
+        Region region,
+        HttpStatus status,
+        HttpHeaders headers,
+        HttpServletRequest request
+    ) {
+        headers.setContentLength(region.length());
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return ResponseEntity.status(status).headers(headers).build();
+        }
+
+        // Tomcat сам отправит отрезок файла в сокет после фиксации заголовков
+        if (region.length() > 0 && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.getAbsolutePath());
+            request.setAttribute(SENDFILE_START, region.start());
+            request.setAttribute(SENDFILE_END, region.end());
+            return ResponseEntity.status(status).headers(headers).build();
+        }
+
+        return ResponseEntity.status(status)
+                             .headers(headers)
+                             .body(output -> transfer(file, List.of(region), output, null, 0));
+    }
+
+    // multipart/byteranges: у каждой части свои Content-Type и Content-Range
+    private ResponseEntity<StreamingResponseBody> multipart(
+        File file,
+        List<Region> regions,
+        long length,
+        HttpHeaders headers,
+        HttpServletRequest request
+    ) {
+        String boundary = UUID.randomUUID().toString();
+        headers.setContentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary));
+
+        long contentLength = 0;
+        for (Region region : regions) {
+            contentLength += partHeader(boundary, region, length).length + region.length();
+        }
+        contentLength += closingBoundary(boundary).length;
+        headers.setContentLength(contentLength);
+
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).build();
+        }
+
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                             .headers(headers)
+                             .body(output -> transfer(file, regions, output, boundary, length));
+    }
+
+    private void transfer(
+        File file,
+        List<Region> regions,
+        OutputStream output,
+        String boundary,
+        long length
+    ) throws IOException {
+        try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(output);
+            for (Region region : regions) {
+                if (boundary != null) {
+                    output.write(partHeader(boundary, region, length));
+                }
+
+                long position = region.start();
+                while (position < region.end()) {
+                    long transferred = source.transferTo(position, region.end() - position, target);
+                    if (transferred <= 0) {
+                        throw new IOException("Unexpected end of file " + file + " at " + position);
+                    }
+                    position += transferred;
+                }
+            }
+
+            if (boundary != null) {
+                output.write(closingBoundary(boundary));
+            }
+        }
+    }
+
+    // Ошибка сборки обрывает ответ: клиент не получит файл целиком
+    private void transferPrefix(FileAssembler assembler, long available, OutputStream output) throws IOException {
+        try (FileChannel source = assembler.openPrefixChannel()) {
+            WritableByteChannel target   = Channels.newChannel(output);
+            long                position = 0;
+            while (true) {
+                while (position < available) {
+                    long transferred = source.transferTo(position, available - position, target);
+                    if (transferred <= 0) {
+                        throw new IOException("Unexpected end of assembly file at " + position);
+                    }
+                    position += transferred;
+                }
+
+                long length = assembler.getFileSize();
+                if (length >= 0 && position >= length) {
+                    return;
+                }
+
+                // Отданное уходит клиенту до ожидания следующей дыры
+                output.flush();
+                available = join(assembler.awaitPrefix(position));
+            }
+        }
+    }
+
+    private long join(CompletableFuture<Long> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private byte[] partHeader(String boundary, Region region, long length) {
+        return ("\r\n--" + boundary + "\r\n"
+            + HttpHeaders.CONTENT_TYPE + ": " + MediaType.APPLICATION_OCTET_STREAM_VALUE + "\r\n"
+            + HttpHeaders.CONTENT_RANGE + ": bytes " + region.start() + "-" + (region.end() - 1) + "/" + length + "\r\n"
+            + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private byte[] closingBoundary(String boundary) {
+        return ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,6 +1,9 @@
 package com.pentryyy.fragmented_file_transfer_api.component;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
 
 import com.pentryyy.fragmented_file_transfer_api.transfer.core.Chunk;
@@ -12,6 +15,9 @@ public class KafkaTransmissionChannel {
     private final KafkaTemplate<String, Chunk>    chunkKafkaTemplate;
     private final KafkaTemplate<String, Feedback> feedbackKafkaTemplate;
 
+    // Число разделов file-chunks, запрашивается у брокера при первой отправке
+    private volatile int chunkPartitions;
+
     public KafkaTransmissionChannel(
         KafkaTemplate<String, Chunk> chunkKafkaTemplate,
         KafkaTemplate<String, Feedback> feedbackKafkaTemplate
@@ -20,14 +26,26 @@ public class KafkaTransmissionChannel {
         this.feedbackKafkaTemplate = feedbackKafkaTemplate;
     }
 
-    public void sendChunk(Chunk chunk) {
-        chunkKafkaTemplate.send(
+    public CompletableFuture<SendResult<String, Chunk>> sendChunk(Chunk chunk) {
+        // Чанки одной передачи раскладываются по всем разделам по номеру,
+        // ключ остается идентификатором передачи
+        return chunkKafkaTemplate.send(
             "file-chunks",
+            Math.floorMod(chunk.getSequenceNumber(), getChunkPartitions()),
             chunk.getProcessingId(),
             chunk
         );
     }
 
+    private int getChunkPartitions() {
+        int partitions = chunkPartitions;
+        if (partitions == 0) {
+            partitions      = Math.max(1, chunkKafkaTemplate.partitionsFor("file-chunks").size());
+            chunkPartitions = partitions;
+        }
+        return partitions;
+    }
+
     public void sendFeedback(Feedback feedback) {
         feedbackKafkaTemplate.send(
             "file-feedbacks", 
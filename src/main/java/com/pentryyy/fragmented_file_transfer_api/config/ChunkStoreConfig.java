@@ -0,0 +1,19 @@
+package com.pentryyy.fragmented_file_transfer_api.config;
+
+import java.nio.file.Path;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.pentryyy.fragmented_file_transfer_api.transfer.receiver.ChunkStore;
+import com.pentryyy.fragmented_file_transfer_api.utils.DirectoryUtils;
+
+@Configuration
+public class ChunkStoreConfig {
+
+    // Общее для всех сборщиков узла хранилище чанков по хэшу содержимого
+    @Bean
+    public ChunkStore chunkStore() {
+        return new ChunkStore(Path.of(DirectoryUtils.getChunkStoreDir()));
+    }
+}
@@ -3,6 +3,7 @@ package com.pentryyy.fragmented_file_transfer_api.config;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.errors.SerializationException;
@@ -12,6 +13,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
@@ -20,12 +22,14 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.listener.DefaultErrorHandler;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
-import org.springframework.kafka.support.serializer.JsonDeserializer;
-import org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.util.backoff.FixedBackOff;
 
 import com.pentryyy.fragmented_file_transfer_api.transfer.core.Chunk;
 import com.pentryyy.fragmented_file_transfer_api.transfer.core.Feedback;
+import com.pentryyy.fragmented_file_transfer_api.transfer.serialization.ChunkDeserializer;
+import com.pentryyy.fragmented_file_transfer_api.transfer.serialization.ChunkSerializer;
+import com.pentryyy.fragmented_file_transfer_api.transfer.serialization.FeedbackDeserializer;
+import com.pentryyy.fragmented_file_transfer_api.transfer.serialization.FeedbackSerializer;
 
 @Configuration
 @EnableKafka
@@ -34,19 +38,34 @@ public class KafkaConfig {
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${transfer.kafka.chunk-partitions:6}")
+    private int chunkPartitions;
+
+    @Value("${transfer.kafka.replicas:1}")
+    private short replicas;
+
+    // Топик чанков создается с несколькими разделами: чанки одной передачи
+    // раскладываются по ним и читаются параллельно
+    @Bean
+    public NewTopic chunksTopic() {
+        return TopicBuilder.name("file-chunks")
+            .partitions(chunkPartitions)
+            .replicas(replicas)
+            .build();
+    }
+
     // Consumer для Chunk
     @Bean
     public ConsumerFactory<String, Chunk> chunkConsumerFactory() {
         Map<String, Object> config = new HashMap<>();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ConsumerConfig.GROUP_ID_CONFIG, "file-transfer-group");
-        config.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
         
         // Используем ErrorHandlingDeserializer для десериализации с обработкой ошибок
         return new DefaultKafkaConsumerFactory<>(
             config,
             new ErrorHandlingDeserializer<>(new StringDeserializer()),
-            new ErrorHandlingDeserializer<>(new JsonDeserializer<>(Chunk.class))
+            new ErrorHandlingDeserializer<>(new ChunkDeserializer())
         );
     }
 
@@ -56,13 +75,12 @@ public class KafkaConfig {
         Map<String, Object> config = new HashMap<>();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ConsumerConfig.GROUP_ID_CONFIG, "file-feedback-group");
-        config.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
         
         // Используем ErrorHandlingDeserializer для десериализации с обработкой ошибок
         return new DefaultKafkaConsumerFactory<>(
             config,
             new ErrorHandlingDeserializer<>(new StringDeserializer()),
-            new ErrorHandlingDeserializer<>(new JsonDeserializer<>(Feedback.class))
+            new ErrorHandlingDeserializer<>(new FeedbackDeserializer())
         );
     }
 
@@ -72,6 +90,10 @@ public class KafkaConfig {
         ConcurrentKafkaListenerContainerFactory<String, Chunk> factory = 
             new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(chunkConsumerFactory());
+
+        // По слушателю на раздел топика чанков, записи приходят пакетами опроса
+        factory.setConcurrency(chunkPartitions);
+        factory.setBatchListener(true);
         
         // Настраиваем обработчик ошибок, 3 попытки с интервалом 1 сек
         DefaultErrorHandler errorHandler = new DefaultErrorHandler(
@@ -112,13 +134,13 @@ public class KafkaConfig {
         return factory;
     }
 
-    // Producer Factories
+    // Producer Factories (бинарный формат вместо JSON: без base64 и разбора Jackson)
     @Bean
     public ProducerFactory<String, Chunk> chunkProducerFactory() {
         Map<String, Object> config = new HashMap<>();
         config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ChunkSerializer.class);
         config.put(ProducerConfig.ACKS_CONFIG, "all");
         return new DefaultKafkaProducerFactory<>(config);
     }
@@ -128,7 +150,7 @@ public class KafkaConfig {
         Map<String, Object> config = new HashMap<>();
         config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, FeedbackSerializer.class);
         config.put(ProducerConfig.ACKS_CONFIG, "all");
         return new DefaultKafkaProducerFactory<>(config);
     }
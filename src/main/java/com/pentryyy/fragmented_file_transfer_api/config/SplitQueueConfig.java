@@ -0,0 +1,34 @@
+package com.pentryyy.fragmented_file_transfer_api.config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SplitQueueConfig {
+
+    @Value("${transfer.split.workers:4}")
+    private int workers;
+
+    @Value("${transfer.split.queue-capacity:100}")
+    private int queueCapacity;
+
+    // Фоновое разбиение загруженных файлов: число одновременных разбиений и глубина
+    // очереди ограничены, при переполнении задача отклоняется (политику выбирает FileSplitQueue)
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolExecutor splitExecutor() {
+        return new ThreadPoolExecutor(
+            workers,
+            workers,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            Thread.ofVirtual().name("file-split-", 0).factory(),
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+}
@@ -0,0 +1,19 @@
+package com.pentryyy.fragmented_file_transfer_api.config;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.HashedWheelTimer;
+
+@Configuration
+public class TimerConfig {
+
+    // Общий таймер узла: тики обратной связи всех сборщиков и обход сессий загрузки.
+    // Тик 100 мс, 512 ячеек
+    @Bean(destroyMethod = "close")
+    public HashedWheelTimer feedbackTimer() {
+        return new HashedWheelTimer("feedback-timer", 100, TimeUnit.MILLISECONDS, 512);
+    }
+}
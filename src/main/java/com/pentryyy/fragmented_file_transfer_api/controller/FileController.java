@@ -1,22 +1,29 @@
 package com.pentryyy.fragmented_file_transfer_api.controller;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
-import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.pentryyy.fragmented_file_transfer_api.component.FileDownloadResponder;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
 import com.pentryyy.fragmented_file_transfer_api.enumeration.FileTaskStatus;
-import com.pentryyy.fragmented_file_transfer_api.exception.FileProcessingInterruptException;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.SplitMode;
 import com.pentryyy.fragmented_file_transfer_api.model.FileTask;
 import com.pentryyy.fragmented_file_transfer_api.service.FileService;
-import com.pentryyy.fragmented_file_transfer_api.utils.DirectoryUtils;
+import com.pentryyy.fragmented_file_transfer_api.service.FileSplitQueue;
+import com.pentryyy.fragmented_file_transfer_api.service.UploadSessionManager;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.SequenceRanges;
+import com.pentryyy.fragmented_file_transfer_api.transfer.receiver.FileAssembler;
+import com.pentryyy.fragmented_file_transfer_api.transfer.sender.FileSplitter;
+import com.pentryyy.fragmented_file_transfer_api.transfer.sender.UploadSession;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -25,10 +32,13 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/files")
@@ -38,6 +48,15 @@ public class FileController {
     @Autowired
     private FileService fileService;
 
+    @Autowired
+    private FileSplitQueue fileSplitQueue;
+
+    @Autowired
+    private UploadSessionManager uploadSessionManager;
+
+    @Autowired
+    private FileDownloadResponder fileDownloadResponder;
+
     @Operation(
         summary = "Загрузка и обработка файла",
         description = "Загружает файл на сервер, запускает процесс разделения на чанки и сборки с имитацией потери пакетов"
@@ -49,17 +68,22 @@ public class FileController {
             content = @Content(mediaType = "application/json")
         ),
         @ApiResponse(
-            responseCode = "417",
-            description = "Ошибка разложения файла на чанки"
+            responseCode = "202",
+            description = "Файл сохранен, разбиение поставлено в очередь. Ход обработки доступен по /status/{processingId}",
+            content = @Content(mediaType = "application/json")
         ),
         @ApiResponse(
             responseCode = "417",
-            description = "Процесс прерван"
+            description = "Ошибка разложения файла на чанки"
         ),
         @ApiResponse(
             responseCode = "500", 
             description = "Ошибка при обработке файла",
             content = @Content(mediaType = "application/json")
+        ),
+        @ApiResponse(
+            responseCode = "503",
+            description = "Очередь обработки переполнена"
         )
     })
     @PostMapping("/upload")
@@ -75,32 +99,117 @@ public class FileController {
             description = "Размер каждого чанка",
             example = "1024"
         ) 
-        @RequestParam(value = "chunkSize", defaultValue = "1024") int chunkSize
+        @RequestParam(value = "chunkSize", defaultValue = "1024") int chunkSize,
+
+        @Parameter(
+            description = "Режим чтения файла: STREAM - потоковое чтение с копированием, MAPPED - отображение файла в память без копирования, PARALLEL - параллельное чтение областей файла по числу ядер, DEDUP - чанки по содержимому, повторяющиеся у получателя не передаются (chunkSize задает средний размер)",
+            example = "STREAM"
+        ) 
+        @RequestParam(value = "splitMode", defaultValue = "STREAM") SplitMode splitMode,
+
+        @Parameter(
+            description = "Сжатие чанков: NONE, DEFLATE или LZ4. Несжимаемые чанки отправляются как есть",
+            example = "NONE"
+        ) 
+        @RequestParam(value = "compression", defaultValue = "NONE") CompressionType compression,
+
+        @Parameter(
+            description = "Асинхронный режим: ответ 202 сразу после сохранения файла, разбиение идет в фоновой очереди",
+            example = "false"
+        ) 
+        @RequestParam(value = "async", defaultValue = "false") boolean async
     ) {
         
         JSONObject jsonObject = new JSONObject();
 
         String processingId;
         try {
-            processingId = fileService.initializingFileProcessing(file, chunkSize);
+            processingId = fileService.initializingFileProcessing(file, chunkSize, splitMode, compression);
         } catch (IOException e) {
             return ResponseEntity.internalServerError() 
                                  .contentType(MediaType.APPLICATION_JSON)
                                  .body(jsonObject.toString());
         }
 
-        Thread senderThread = new Thread(() -> {
-            fileService.splittingFileIntoChunks(processingId);
-        });
-        
-        // Старт потоков
-        senderThread.start();
-        
-        // Ожидание завершения
+        // Разбиение выполняется на потоке запроса: при spring.threads.virtual.enabled это
+        // виртуальный поток, ожидание окна отправки не занимает поток платформы.
+        // В асинхронном режиме оно уходит в очередь, если та не переполнена.
+        // Повторно загруженный собранный файл уже готов к скачиванию
+        boolean queued = false;
+        if (fileService.getStatusById(processingId) != FileTaskStatus.ASSEMBLE_COMPLETED) {
+            if (async) {
+                queued = fileSplitQueue.submit(processingId);
+            } else {
+                fileService.splittingFileIntoChunks(processingId);
+            }
+        }
+
+        jsonObject.put("processingId", processingId);
+        jsonObject.put("status", fileService.getStatusById(processingId));
+
+        return ResponseEntity.status(queued ? HttpStatus.ACCEPTED : HttpStatus.OK)
+                             .contentType(MediaType.APPLICATION_JSON)
+                             .body(jsonObject.toString());
+    }
+
+    @Operation(
+        summary = "Потоковая загрузка и обработка файла",
+        description = "Принимает файл телом запроса (application/octet-stream) и отправляет чанки по мере приема, без промежуточной копии файла. Если длина тела неизвестна, итоговые метаданные отправляются в конце потока"
+    )
+    @ApiResponses({
+        @ApiResponse(
+            responseCode = "200", 
+            description = "Файл принят и разложен на чанки",
+            content = @Content(mediaType = "application/json")
+        ),
+        @ApiResponse(
+            responseCode = "417",
+            description = "Ошибка разложения файла на чанки"
+        ),
+        @ApiResponse(
+            responseCode = "500", 
+            description = "Ошибка при обработке файла",
+            content = @Content(mediaType = "application/json")
+        )
+    })
+    @PostMapping(value = "/upload-stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<String> uploadStream(
+        HttpServletRequest request,
+
+        @Parameter(
+            description = "Имя файла",
+            example = "document.pdf"
+        ) 
+        @RequestParam(value = "fileName", required = false) String fileName,
+
+        @Parameter(
+            description = "Размер каждого чанка",
+            example = "1024"
+        ) 
+        @RequestParam(value = "chunkSize", defaultValue = "1024") int chunkSize,
+
+        @Parameter(
+            description = "Сжатие чанков: NONE, DEFLATE или LZ4. Несжимаемые чанки отправляются как есть",
+            example = "NONE"
+        ) 
+        @RequestParam(value = "compression", defaultValue = "NONE") CompressionType compression
+    ) {
+
+        JSONObject jsonObject = new JSONObject();
+
+        String processingId;
         try {
-            senderThread.join();
-        } catch (InterruptedException e) {
-            throw new FileProcessingInterruptException();
+            processingId = fileService.streamFileProcessing(
+                request.getInputStream(),
+                request.getContentLengthLong(),
+                fileName,
+                chunkSize,
+                compression
+            );
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError() 
+                                 .contentType(MediaType.APPLICATION_JSON)
+                                 .body(jsonObject.toString());
         }
 
         jsonObject.put("processingId", processingId);
@@ -111,9 +220,235 @@ public class FileController {
                              .body(jsonObject.toString());
     }
 
+    @Operation(
+        summary = "Открытие сессии загрузки частями",
+        description = "Создает сессию: файл заранее выделяется на сервере, части загружаются параллельно и в любом порядке, отправка чанков начинается с приходом первой части"
+    )
+    @ApiResponses({
+        @ApiResponse(
+            responseCode = "200",
+            description = "Сессия создана",
+            content = @Content(mediaType = "application/json")
+        ),
+        @ApiResponse(
+            responseCode = "400",
+            description = "Некорректные размеры файла, части или чанка"
+        ),
+        @ApiResponse(
+            responseCode = "503",
+            description = "Превышено число одновременных сессий"
+        )
+    })
+    @PostMapping("/uploads")
+    public ResponseEntity<String> openUploadSession(
+        @Parameter(
+            description = "Имя файла",
+            example = "document.pdf"
+        ) 
+        @RequestParam(value = "fileName", required = false) String fileName,
+
+        @Parameter(
+            description = "Размер файла в байтах",
+            required = true,
+            example = "104857600"
+        ) 
+        @RequestParam("fileSize") long fileSize,
+
+        @Parameter(
+            description = "Размер части, округляется вниз до кратного размеру чанка",
+            example = "8388608"
+        ) 
+        @RequestParam(value = "partSize", defaultValue = "8388608") int partSize,
+
+        @Parameter(
+            description = "Размер каждого чанка",
+            example = "1024"
+        ) 
+        @RequestParam(value = "chunkSize", defaultValue = "1024") int chunkSize,
+
+        @Parameter(
+            description = "Сжатие чанков: NONE, DEFLATE или LZ4. Несжимаемые чанки отправляются как есть",
+            example = "NONE"
+        ) 
+        @RequestParam(value = "compression", defaultValue = "NONE") CompressionType compression
+    ) throws IOException {
+
+        UploadSession session = uploadSessionManager.openSession(
+            fileName,
+            fileSize,
+            partSize,
+            chunkSize,
+            compression
+        );
+
+        return ResponseEntity.ok()
+                             .contentType(MediaType.APPLICATION_JSON)
+                             .body(describeSession(session).toString());
+    }
+
+    @Operation(
+        summary = "Загрузка части файла",
+        description = "Записывает часть по ее смещению. Повторная загрузка уже принятой части ничего не меняет"
+    )
+    @ApiResponses({
+        @ApiResponse(
+            responseCode = "204",
+            description = "Часть записана"
+        ),
+        @ApiResponse(
+            responseCode = "400",
+            description = "Неверный номер или размер части"
+        ),
+        @ApiResponse(
+            responseCode = "404",
+            description = "Сессия загрузки не найдена"
+        )
+    })
+    @PutMapping(value = "/uploads/{processingId}/parts/{partNumber}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Void> uploadPart(
+        @Parameter(
+            description = "Уникальный идентификатор обработки",
+            required = true,
+            example = "d3b07384-1137-47ad-8bb4-0f1c1ffc5a1d"
+        ) 
+        @PathVariable String processingId,
+
+        @Parameter(
+            description = "Номер части, с 0",
+            required = true,
+            example = "0"
+        ) 
+        @PathVariable int partNumber,
+
+        HttpServletRequest request
+    ) throws IOException {
+
+        uploadSessionManager.writePart(processingId, partNumber, request.getInputStream());
+        return ResponseEntity.noContent().build();
+    }
+
+    @Operation(
+        summary = "Состояние сессии загрузки",
+        description = "Возвращает принятые части в виде диапазонов и число недостающих"
+    )
+    @ApiResponses({
+        @ApiResponse(
+            responseCode = "200",
+            description = "Состояние сессии",
+            content = @Content(mediaType = "application/json")
+        ),
+        @ApiResponse(
+            responseCode = "404",
+            description = "Сессия загрузки не найдена"
+        )
+    })
+    @GetMapping("/uploads/{processingId}")
+    public ResponseEntity<String> getUploadSession(
+        @Parameter(
+            description = "Уникальный идентификатор обработки",
+            required = true,
+            example = "d3b07384-1137-47ad-8bb4-0f1c1ffc5a1d"
+        ) 
+        @PathVariable String processingId
+    ) {
+
+        return ResponseEntity.ok()
+                             .contentType(MediaType.APPLICATION_JSON)
+                             .body(describeSession(uploadSessionManager.getUploadSession(processingId)).toString());
+    }
+
+    @Operation(
+        summary = "Фиксация загрузки частями",
+        description = "Проверяет, что все части приняты, и отвечает по завершении отправки чанков"
+    )
+    @ApiResponses({
+        @ApiResponse(
+            responseCode = "200",
+            description = "Файл принят и разложен на чанки",
+            content = @Content(mediaType = "application/json")
+        ),
+        @ApiResponse(
+            responseCode = "404",
+            description = "Сессия загрузки не найдена"
+        ),
+        @ApiResponse(
+            responseCode = "409",
+            description = "Приняты не все части"
+        ),
+        @ApiResponse(
+            responseCode = "417",
+            description = "Ошибка разложения файла на чанки"
+        )
+    })
+    @PostMapping("/uploads/{processingId}/commit")
+    public CompletableFuture<ResponseEntity<String>> commitUploadSession(
+        @Parameter(
+            description = "Уникальный идентификатор обработки",
+            required = true,
+            example = "d3b07384-1137-47ad-8bb4-0f1c1ffc5a1d"
+        ) 
+        @PathVariable String processingId
+    ) {
+
+        return uploadSessionManager.commit(processingId).thenApply(result -> {
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("processingId", processingId);
+            jsonObject.put("status", fileService.getStatusById(processingId));
+
+            return ResponseEntity.ok()
+                                 .contentType(MediaType.APPLICATION_JSON)
+                                 .body(jsonObject.toString());
+        });
+    }
+
+    @Operation(
+        summary = "Отмена загрузки частями",
+        description = "Прерывает сессию и удаляет принятые части"
+    )
+    @ApiResponses({
+        @ApiResponse(
+            responseCode = "204",
+            description = "Сессия отменена"
+        ),
+        @ApiResponse(
+            responseCode = "404",
+            description = "Сессия загрузки не найдена"
+        )
+    })
+    @DeleteMapping("/uploads/{processingId}")
+    public ResponseEntity<Void> abortUploadSession(
+        @Parameter(
+            description = "Уникальный идентификатор обработки",
+            required = true,
+            example = "d3b07384-1137-47ad-8bb4-0f1c1ffc5a1d"
+        ) 
+        @PathVariable String processingId
+    ) {
+
+        uploadSessionManager.abort(processingId);
+        return ResponseEntity.noContent().build();
+    }
+
+    private JSONObject describeSession(UploadSession session) {
+        SequenceRanges landed = session.getLandedParts();
+
+        JSONArray ranges = new JSONArray();
+        for (int i = 0; i < landed.getRangeCount(); i++) {
+            ranges.put(new JSONArray().put(landed.getStart(i)).put(landed.getEnd(i)));
+        }
+
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("processingId", session.getProcessingId());
+        jsonObject.put("partSize", session.getPartSize());
+        jsonObject.put("totalParts", session.getTotalParts());
+        jsonObject.put("receivedParts", ranges);
+        jsonObject.put("missingParts", session.getMissingParts());
+        return jsonObject;
+    }
+
     @Operation(
         summary = "Скачивание обработанного файла",
-        description = "Возвращает собранный файл по идентификатору обработки"
+        description = "Возвращает собранный файл по идентификатору обработки. Поддерживаются Range, If-Range и условные запросы по ETag (SHA-256 файла) и Last-Modified. В прогрессивном режиме ответ начинается до конца сборки и идет по непрерывному префиксу полученных чанков"
     )
     @ApiResponses({
         @ApiResponse(
@@ -121,6 +456,15 @@ public class FileController {
             description = "Файл успешно доставлен",
             content = @Content(mediaType = "application/octet-stream")
         ),
+        @ApiResponse(
+            responseCode = "206",
+            description = "Запрошенные диапазоны файла (Range), несколько диапазонов - multipart/byteranges",
+            content = @Content(mediaType = "application/octet-stream")
+        ),
+        @ApiResponse(
+            responseCode = "304",
+            description = "Файл не изменился (If-None-Match, If-Modified-Since)"
+        ),
         @ApiResponse(
             responseCode = "404",
             description = "Идентификатор обработки не найден"
@@ -134,8 +478,16 @@ public class FileController {
             description = "Ошибка сбора файла из чанков"
         ),
         @ApiResponse(
-            responseCode = "417",
-            description = "Процесс прерван"
+            responseCode = "412",
+            description = "Не выполнено условие If-Match или If-Unmodified-Since"
+        ),
+        @ApiResponse(
+            responseCode = "416",
+            description = "Ни один диапазон не попадает в файл"
+        ),
+        @ApiResponse(
+            responseCode = "422",
+            description = "Файл неполон или не совпала контрольная сумма"
         ),
         @ApiResponse(
             responseCode = "500", 
@@ -143,49 +495,95 @@ public class FileController {
         )
     })
     @GetMapping("/download/{processingId}")
-    public ResponseEntity<Resource> downloadFile(
+    public ResponseEntity<StreamingResponseBody> downloadFile(
         @Parameter(
             description = "Уникальный идентификатор обработки",
             required = true,
             example = "d3b07384-1137-47ad-8bb4-0f1c1ffc5a1d"
         ) 
-        @PathVariable String processingId
+        @PathVariable String processingId,
+
+        @Parameter(
+            description = "Прогрессивный режим: файл отдается по мере сборки, без Range и ETag",
+            example = "false"
+        ) 
+        @RequestParam(value = "progressive", defaultValue = "false") boolean progressive,
+
+        HttpServletRequest request,
+        HttpServletResponse response
     ) {
         
+        // Сборка ожидается на потоке запроса: это виртуальный поток, и ожидание не занимает
+        // поток платформы. Ответ после синхронной обработки может уйти через sendfile,
+        // при асинхронной диспетчеризации Tomcat его не выполняет
         if (!fileService.getStatusById(processingId).equals(FileTaskStatus.ASSEMBLE_COMPLETED)) {
-            Thread receiverThread = new Thread(() -> {
-                fileService.assembleFileFromChunks(processingId);
-            });
-            
-            // Старт потоков
-            receiverThread.start();
-            
-            // Ожидание завершения
+
+            // Диапазон запрашивается у готового файла, прогрессивно отдается только файл целиком
+            if (progressive && request.getHeader(HttpHeaders.RANGE) == null) {
+                FileAssembler           assembler = fileService.getAssembler(processingId);
+                CompletableFuture<Void> assembly  = fileService.assembleFileFromChunks(processingId);
+                if (!assembly.isDone()) {
+                    return fileDownloadResponder.respondProgressive(
+                        assembler,
+                        fileService.getAssembledFileName(processingId),
+                        request
+                    );
+                }
+            }
+
             try {
-                receiverThread.join();
-            } catch (InterruptedException e) {
-                throw new FileProcessingInterruptException();
+                fileService.assembleFileFromChunks(processingId).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
             }
         }
 
-        File tempFile = DirectoryUtils.getOutputFile(processingId);
-         
-        Resource resource = new FileSystemResource(tempFile);
+        return fileDownloadResponder.respond(
+            fileService.getOutputFile(processingId),
+            fileService.getFileDigestById(processingId),
+            request,
+            response
+        );
+    }
 
-        ContentDisposition contentDisposition = ContentDisposition
-            .attachment()
-            .filename(tempFile.getName(), StandardCharsets.UTF_8)
-            .build();
-        
-        return ResponseEntity.ok()
-                             .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition.toString())
-                             .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                             .body(resource);
+    @Operation(
+        summary = "Удаление задачи обработки",
+        description = "Удаляет задачу и ее файлы. Содержимое, на которое ссылаются повторные загрузки того же файла, удаляется вместе с последней ссылкой"
+    )
+    @ApiResponses({
+        @ApiResponse(
+            responseCode = "204",
+            description = "Задача удалена"
+        ),
+        @ApiResponse(
+            responseCode = "404",
+            description = "Идентификатор обработки не найден"
+        ),
+        @ApiResponse(
+            responseCode = "409",
+            description = "Обработка еще выполняется"
+        )
+    })
+    @DeleteMapping("/{processingId}")
+    public ResponseEntity<Void> deleteTask(
+        @Parameter(
+            description = "Уникальный идентификатор обработки",
+            required = true,
+            example = "d3b07384-1137-47ad-8bb4-0f1c1ffc5a1d"
+        ) 
+        @PathVariable String processingId
+    ) {
+
+        fileService.deleteTask(processingId);
+        return ResponseEntity.noContent().build();
     }
 
     @Operation(
         summary = "Проверка статуса обработки",
-        description = "Возвращает текущий статус обработки файла"
+        description = "Возвращает текущий статус обработки файла и, пока идет передача, размер окна и скорость отправки"
     )
     @ApiResponses({
         @ApiResponse(
@@ -210,6 +608,16 @@ public class FileController {
 
         JSONObject jsonObject = new JSONObject();
         jsonObject.put("status", fileService.getStatusById(processingId));
+
+        FileSplitter splitter = fileService.getActiveSplitter(processingId);
+        if (splitter != null) {
+            jsonObject.put("windowSize", splitter.getWindowSize());
+            jsonObject.put("inFlight", splitter.getInFlight());
+            jsonObject.put("sendRate", Math.round(splitter.getSendRate()));
+            jsonObject.put("persistedChunks", splitter.getPersistedChunks());
+            jsonObject.put("fullyPersisted", splitter.isFullyPersisted());
+        }
+
         return ResponseEntity.ok()
                              .contentType(MediaType.APPLICATION_JSON)
                              .body(jsonObject.toString());
@@ -0,0 +1,26 @@
+package com.pentryyy.fragmented_file_transfer_api.enumeration;
+
+public enum CompressionType {
+    NONE((byte) 0),
+    DEFLATE((byte) 1),
+    LZ4((byte) 2);
+
+    private final byte id;
+
+    CompressionType(byte id) {
+        this.id = id;
+    }
+
+    public byte getId() {
+        return id;
+    }
+
+    public static CompressionType fromId(byte id) {
+        for (CompressionType type : values()) {
+            if (type.id == id) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression id: " + id);
+    }
+}
@@ -3,6 +3,7 @@ package com.pentryyy.fragmented_file_transfer_api.enumeration;
 public enum FileTaskStatus {
     CREATED,
     PROCESS_INTERRUPTED,
+    SPLIT_QUEUED,
     SPLIT_PROCESSING,
     SPLIT_FAILED,
     SPLIT_COMPLETED,
@@ -0,0 +1,8 @@
+package com.pentryyy.fragmented_file_transfer_api.enumeration;
+
+public enum SplitMode {
+    STREAM,
+    MAPPED,
+    PARALLEL,
+    DEDUP
+}
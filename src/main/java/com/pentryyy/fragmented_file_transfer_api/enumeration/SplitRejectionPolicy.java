@@ -0,0 +1,6 @@
+package com.pentryyy.fragmented_file_transfer_api.enumeration;
+
+public enum SplitRejectionPolicy {
+    REJECT,
+    CALLER_RUNS
+}
@@ -0,0 +1,21 @@
+package com.pentryyy.fragmented_file_transfer_api.exception;
+
+import org.springframework.http.HttpStatus;
+
+import com.pentryyy.fragmented_file_transfer_api.exception.custom.behaviour.CustomHttpException;
+
+public class FileDigestMismatchException extends RuntimeException implements CustomHttpException {
+    public FileDigestMismatchException(){
+        super("Контрольная сумма собранного файла не совпадает с исходной");
+    }
+
+    @Override
+    public HttpStatus getHttpStatus() {
+        return HttpStatus.UNPROCESSABLE_ENTITY;
+    }
+
+    @Override
+    public String getErrorMessage() {
+        return getMessage();
+    }
+}
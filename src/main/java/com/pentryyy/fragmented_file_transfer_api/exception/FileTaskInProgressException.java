@@ -0,0 +1,21 @@
+package com.pentryyy.fragmented_file_transfer_api.exception;
+
+import org.springframework.http.HttpStatus;
+
+import com.pentryyy.fragmented_file_transfer_api.exception.custom.behaviour.CustomHttpException;
+
+public class FileTaskInProgressException extends RuntimeException implements CustomHttpException {
+    public FileTaskInProgressException(String processingId){
+        super("Обработка еще выполняется: " + processingId);
+    }
+
+    @Override
+    public HttpStatus getHttpStatus() {
+        return HttpStatus.CONFLICT;
+    }
+
+    @Override
+    public String getErrorMessage() {
+        return getMessage();
+    }
+}
@@ -0,0 +1,21 @@
+package com.pentryyy.fragmented_file_transfer_api.exception;
+
+import org.springframework.http.HttpStatus;
+
+import com.pentryyy.fragmented_file_transfer_api.exception.custom.behaviour.CustomHttpException;
+
+public class SplitQueueFullException extends RuntimeException implements CustomHttpException {
+    public SplitQueueFullException(){
+        super("Очередь обработки файлов переполнена, повторите запрос позже");
+    }
+
+    @Override
+    public HttpStatus getHttpStatus() {
+        return HttpStatus.SERVICE_UNAVAILABLE;
+    }
+
+    @Override
+    public String getErrorMessage() {
+        return getMessage();
+    }
+}
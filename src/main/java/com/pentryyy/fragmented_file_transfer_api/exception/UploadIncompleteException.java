@@ -0,0 +1,21 @@
+package com.pentryyy.fragmented_file_transfer_api.exception;
+
+import org.springframework.http.HttpStatus;
+
+import com.pentryyy.fragmented_file_transfer_api.exception.custom.behaviour.CustomHttpException;
+
+public class UploadIncompleteException extends RuntimeException implements CustomHttpException {
+    public UploadIncompleteException(int missingParts){
+        super("Загрузка не завершена. Недостающих частей: " + missingParts);
+    }
+
+    @Override
+    public HttpStatus getHttpStatus() {
+        return HttpStatus.CONFLICT;
+    }
+
+    @Override
+    public String getErrorMessage() {
+        return getMessage();
+    }
+}
@@ -0,0 +1,21 @@
+package com.pentryyy.fragmented_file_transfer_api.exception;
+
+import org.springframework.http.HttpStatus;
+
+import com.pentryyy.fragmented_file_transfer_api.exception.custom.behaviour.CustomHttpException;
+
+public class UploadPartInvalidException extends RuntimeException implements CustomHttpException {
+    public UploadPartInvalidException(String reason){
+        super("Некорректная часть файла: " + reason);
+    }
+
+    @Override
+    public HttpStatus getHttpStatus() {
+        return HttpStatus.BAD_REQUEST;
+    }
+
+    @Override
+    public String getErrorMessage() {
+        return getMessage();
+    }
+}
@@ -0,0 +1,21 @@
+package com.pentryyy.fragmented_file_transfer_api.exception;
+
+import org.springframework.http.HttpStatus;
+
+import com.pentryyy.fragmented_file_transfer_api.exception.custom.behaviour.CustomHttpException;
+
+public class UploadSessionNotFoundException extends RuntimeException implements CustomHttpException {
+    public UploadSessionNotFoundException(String processingId){
+        super("Сессия загрузки с id " + processingId + " не найдена");
+    }
+
+    @Override
+    public HttpStatus getHttpStatus() {
+        return HttpStatus.NOT_FOUND;
+    }
+
+    @Override
+    public String getErrorMessage() {
+        return getMessage();
+    }
+}
@@ -0,0 +1,38 @@
+package com.pentryyy.fragmented_file_transfer_api.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Собранный файл по SHA-256: где лежат байты и сколько задач на них ссылается
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "file_contents")
+public class FileContent {
+
+    @Id
+    @Column(name = "digest", length = 64, nullable = false)
+    private String digest;
+
+    @Column(name = "file_size", nullable = false)
+    private long fileSize;
+
+    @Column(name = "location", length = 1024, nullable = false)
+    private String location;
+
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    @Column(name = "timestamp", nullable = false)
+    private LocalDateTime timestamp;
+}
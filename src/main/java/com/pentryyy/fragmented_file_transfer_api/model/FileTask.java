@@ -1,7 +1,9 @@
 package com.pentryyy.fragmented_file_transfer_api.model;
 
 import java.time.LocalDateTime;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
 import com.pentryyy.fragmented_file_transfer_api.enumeration.FileTaskStatus;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.SplitMode;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
@@ -33,6 +35,29 @@ public class FileTask {
     @Column(name = "chunk_size", nullable = false)
     private int chunkSize;
 
+    @Builder.Default
+    @Enumerated(EnumType.STRING)
+    @Column(name = "split_mode", length = 20, nullable = false)
+    private SplitMode splitMode = SplitMode.STREAM;
+
+    @Builder.Default
+    @Enumerated(EnumType.STRING)
+    @Column(name = "compression", length = 20, nullable = false)
+    private CompressionType compression = CompressionType.NONE;
+
+    @Column(name = "file_digest", length = 64)
+    private String fileDigest;
+
+    @Column(name = "original_name", length = 255)
+    private String originalName;
+
+    @Column(name = "file_size")
+    private Long fileSize;
+
+    // Задача держит ссылку на содержимое в file_contents
+    @Column(name = "content_digest", length = 64)
+    private String contentDigest;
+
     @Column(name = "timestamp", nullable = false)
     private LocalDateTime timestamp;
 }
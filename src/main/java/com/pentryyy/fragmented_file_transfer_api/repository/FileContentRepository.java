@@ -0,0 +1,60 @@
+package com.pentryyy.fragmented_file_transfer_api.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.pentryyy.fragmented_file_transfer_api.model.FileContent;
+
+import jakarta.persistence.LockModeType;
+
+@Repository
+public interface FileContentRepository extends JpaRepository<FileContent, String> {
+
+    // Одновременно собранные одинаковые файлы не конфликтуют: вторая запись добавляет ссылку
+    @Modifying
+    @Transactional
+    @Query(
+        value = "INSERT INTO file_contents (digest, file_size, location, ref_count, timestamp) "
+              + "VALUES (:digest, :fileSize, :location, 1, :timestamp) "
+              + "ON CONFLICT (digest) DO UPDATE SET ref_count = file_contents.ref_count + 1",
+        nativeQuery = true
+    )
+    void addReference(
+        @Param("digest") String digest,
+        @Param("fileSize") long fileSize,
+        @Param("location") String location,
+        @Param("timestamp") LocalDateTime timestamp
+    );
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileContent c SET c.refCount = c.refCount + 1 WHERE c.digest = :digest AND c.fileSize = :fileSize")
+    int incrementRefCount(
+        @Param("digest") String digest, 
+        @Param("fileSize") long fileSize
+    );
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileContent c SET c.refCount = c.refCount - 1 WHERE c.digest = :digest")
+    int decrementRefCount(@Param("digest") String digest);
+
+    // Запись удаляется, только если за это время никто не взял новую ссылку
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM FileContent c WHERE c.digest = :digest AND c.refCount <= 0")
+    int deleteUnreferenced(@Param("digest") String digest);
+
+    // SELECT ... FOR UPDATE: строка заблокирована до конца транзакции вызывающего
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM FileContent c WHERE c.digest = :digest")
+    Optional<FileContent> findByIdForUpdate(@Param("digest") String digest);
+}
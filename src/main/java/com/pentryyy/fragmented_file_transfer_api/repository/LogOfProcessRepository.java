@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.pentryyy.fragmented_file_transfer_api.enumeration.FileTaskStatus;
 import com.pentryyy.fragmented_file_transfer_api.model.FileTask;
@@ -19,6 +20,7 @@ public interface LogOfProcessRepository extends JpaRepository<FileTask, String>
     Optional<FileTaskStatus> findStatusById(@Param("id") String processingId);
 
     @Modifying
+    @Transactional
     @Query("UPDATE FileTask f SET f.status = :status WHERE f.processingId = :id")
     void updateStatusById(
         @Param("id") String processingId, 
@@ -26,6 +28,37 @@ public interface LogOfProcessRepository extends JpaRepository<FileTask, String>
     );
 
     @Modifying
+    @Transactional
+    @Query("UPDATE FileTask f SET f.fileDigest = :fileDigest WHERE f.processingId = :id")
+    void updateFileDigestById(
+        @Param("id") String processingId, 
+        @Param("fileDigest") String fileDigest
+    );
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileTask f SET f.fileSize = :fileSize WHERE f.processingId = :id")
+    void updateFileSizeById(
+        @Param("id") String processingId, 
+        @Param("fileSize") Long fileSize
+    );
+
+    // Ссылка на содержимое берется один раз, даже если завершение сборки обработано повторно
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileTask f SET f.contentDigest = :contentDigest WHERE f.processingId = :id AND f.contentDigest IS NULL")
+    int claimContentDigestById(
+        @Param("id") String processingId, 
+        @Param("contentDigest") String contentDigest
+    );
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileTask f SET f.contentDigest = NULL WHERE f.processingId = :id")
+    void clearContentDigestById(@Param("id") String processingId);
+
+    @Modifying
+    @Transactional
     @Query("UPDATE FileTask f SET f.timestamp = :timestamp WHERE f.processingId = :id")
     void updateTimestampById(
         @Param("id") String processingId, 
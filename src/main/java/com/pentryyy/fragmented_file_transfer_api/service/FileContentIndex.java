@@ -0,0 +1,117 @@
+package com.pentryyy.fragmented_file_transfer_api.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.pentryyy.fragmented_file_transfer_api.model.FileContent;
+import com.pentryyy.fragmented_file_transfer_api.repository.FileContentRepository;
+import com.pentryyy.fragmented_file_transfer_api.utils.DirectoryUtils;
+
+// Индекс собранных файлов по SHA-256: повторная загрузка того же файла получает ссылку
+// на готовые байты. Байты удаляются, когда на них не ссылается ни одна задача.
+// Изменения счетчика и файлов идут в одной транзакции под блокировкой строки: новая
+// ссылка не попадет между удалением записи и удалением файла
+@Service
+public class FileContentIndex {
+
+    @Autowired
+    private FileContentRepository fileContentRepository;
+
+    // Собранный файл доступен по хэшу через жесткую ссылку в каталоге содержимого.
+    // Если файловая система их не поддерживает, местом хранения остается файл задачи
+    @Transactional(rollbackFor = IOException.class)
+    public void register(String digest, File assembledFile) throws IOException {
+        Path content  = DirectoryUtils.getContentFile(digest).toPath();
+        Path location = content;
+        try {
+            Files.createDirectories(content.getParent());
+            Files.createLink(content, assembledFile.toPath());
+        } catch (FileAlreadyExistsException e) {
+
+            // Тот же файл уже собран другой задачей
+        } catch (IOException | UnsupportedOperationException e) {
+            location = assembledFile.toPath();
+        }
+
+        fileContentRepository.addReference(digest, assembledFile.length(), location.toString(), LocalDateTime.now());
+
+        // Строка уже заблокирована. Освобождение последней ссылки могло удалить найденный
+        // выше файл до нее - тогда запись создана заново и ссылка на файл восстанавливается
+        if (location.equals(content) && !Files.isRegularFile(content)) {
+            Files.createLink(content, assembledFile.toPath());
+        }
+    }
+
+    // Ссылка берется до создания файла задачи: пока она есть, содержимое не удалится.
+    // false - такого файла нет, он передается обычным путем
+    @Transactional
+    public boolean acquire(String digest, long fileSize, Path target) {
+        if (fileContentRepository.incrementRefCount(digest, fileSize) == 0) {
+            return false;
+        }
+
+        Path location = getLocation(digest);
+        if (location == null) {
+            release(digest);
+            return false;
+        }
+
+        try {
+            Files.createLink(target, location);
+        } catch (IOException | UnsupportedOperationException e) {
+
+            // Без жесткой ссылки задача читает содержимое по хэшу
+            System.err.println("Failed to link content " + digest + " to " + target + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    // Возвращает место хранения, если на содержимое еще ссылаются другие задачи
+    @Transactional
+    public Path release(String digest) {
+        Optional<FileContent> content = fileContentRepository.findByIdForUpdate(digest);
+        if (content.isEmpty()) {
+            return null;
+        }
+
+        Path location = Path.of(content.get().getLocation());
+        fileContentRepository.decrementRefCount(digest);
+        if (fileContentRepository.deleteUnreferenced(digest) == 0) {
+            return location;
+        }
+
+        try {
+            Files.deleteIfExists(location);
+
+            // Место хранения в файле задачи: ее каталог остался после удаления задачи ради него
+            if (!location.toAbsolutePath().startsWith(Path.of(DirectoryUtils.getContentDir()).toAbsolutePath())) {
+                Files.deleteIfExists(location.getParent());
+            }
+        } catch (DirectoryNotEmptyException e) {
+
+            // Задача с этим каталогом еще существует
+        } catch (IOException e) {
+            System.err.println("Failed to delete content " + digest + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    // null, если содержимого нет или его файл пропал
+    public Path getLocation(String digest) {
+        return fileContentRepository
+            .findById(digest)
+            .map(content -> Path.of(content.getLocation()))
+            .filter(Files::isRegularFile)
+            .orElse(null);
+    }
+}
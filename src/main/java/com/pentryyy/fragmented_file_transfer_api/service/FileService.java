@@ -2,28 +2,40 @@ package com.pentryyy.fragmented_file_transfer_api.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.pentryyy.fragmented_file_transfer_api.component.KafkaTransmissionChannel;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
 import com.pentryyy.fragmented_file_transfer_api.enumeration.FileTaskStatus;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.SplitMode;
 import com.pentryyy.fragmented_file_transfer_api.exception.FileNotAssembledException;
 import com.pentryyy.fragmented_file_transfer_api.exception.FileNotSplitedException;
 import com.pentryyy.fragmented_file_transfer_api.exception.FileProcessNotFoundException;
+import com.pentryyy.fragmented_file_transfer_api.exception.FileTaskInProgressException;
+import com.pentryyy.fragmented_file_transfer_api.exception.custom.behaviour.CustomHttpException;
 import com.pentryyy.fragmented_file_transfer_api.model.FileTask;
 import com.pentryyy.fragmented_file_transfer_api.repository.LogOfProcessRepository;
 import com.pentryyy.fragmented_file_transfer_api.service.kafka.FileAssemblerManager;
 import com.pentryyy.fragmented_file_transfer_api.service.kafka.FileSplitterManager;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Integrity;
 import com.pentryyy.fragmented_file_transfer_api.transfer.receiver.FileAssembler;
 import com.pentryyy.fragmented_file_transfer_api.transfer.sender.FileSplitter;
 import com.pentryyy.fragmented_file_transfer_api.utils.DirectoryUtils;
@@ -31,11 +43,22 @@ import com.pentryyy.fragmented_file_transfer_api.utils.DirectoryUtils;
 @Service
 public class FileService {
 
-    private File tempFile;
+    // Задачи, которые сейчас разбивают или собирают файл: удалять их нельзя
+    private static final Set<FileTaskStatus> IN_PROGRESS_STATUSES = EnumSet.of(
+        FileTaskStatus.SPLIT_QUEUED,
+        FileTaskStatus.SPLIT_PROCESSING,
+        FileTaskStatus.ASSEMBLE_PROCESSING
+    );
 
     @Autowired
     private LogOfProcessRepository logOfProcessRepository;
 
+    @Autowired
+    private FileContentIndex fileContentIndex;
+
+    @Autowired
+    private StagedFileRegistry stagedFileRegistry;
+
     @Autowired
     private KafkaTransmissionChannel channel;
 
@@ -53,7 +76,9 @@ public class FileService {
 
     public String initializingFileProcessing(
         MultipartFile file, 
-        int chunkSize
+        int chunkSize,
+        SplitMode splitMode,
+        CompressionType compression
     ) throws IOException {
 
         // Создаем уникальный ID для обработки
@@ -64,27 +89,129 @@ public class FileService {
             DirectoryUtils.getOutputDir(processingId)
         ));
 
+        MessageDigest digest     = Integrity.newFileDigest();
+        File          uploaded   = DirectoryUtils.convert(file, digest);
+        String        fileDigest = HexFormat.of().formatHex(digest.digest());
+
         FileTask fileTask = FileTask
             .builder()
             .processingId(processingId)
             .status(FileTaskStatus.CREATED)
             .chunkSize(chunkSize)
+            .splitMode(splitMode)
+            .compression(compression)
+            .originalName(file.getOriginalFilename())
+            .fileSize(uploaded.length())
             .timestamp(LocalDateTime.now())
             .build();
 
-        this.tempFile = DirectoryUtils.convert(file);
+        // Такой файл уже собран: задача сразу завершена и ссылается на готовые байты,
+        // разбиения и передачи через Kafka нет
+        Path target = Paths.get(
+            DirectoryUtils.getOutputDir(processingId), 
+            toAssembledFileName(processingId, file.getOriginalFilename())
+        );
+        if (fileContentIndex.acquire(fileDigest, uploaded.length(), target)) {
+            Files.deleteIfExists(uploaded.toPath());
+
+            fileTask.setStatus(FileTaskStatus.ASSEMBLE_COMPLETED);
+            fileTask.setFileDigest(fileDigest);
+            fileTask.setContentDigest(fileDigest);
+            logOfProcessRepository.save(fileTask);
+
+            System.out.println("Reused assembled content " + fileDigest + " (id " + processingId + ")");
+            return processingId;
+        }
+
+        // Файл каждой загрузки хранится под своим processingId: параллельные загрузки независимы
+        stagedFileRegistry.stage(processingId, uploaded);
+
+        logOfProcessRepository.save(fileTask);
+
+        return processingId;
+    }
+
+    // Потоковая загрузка: чанки отправляются по мере приема тела запроса, без промежуточной
+    // копии загруженного файла. Принятые байты пишутся один раз - в файл для повторной отправки
+    public String streamFileProcessing(
+        InputStream input,
+        long contentLength,
+        String fileName,
+        int chunkSize,
+        CompressionType compression
+    ) throws IOException {
+        String processingId = UUID.randomUUID().toString();
 
+        Files.createDirectories(Paths.get(
+            DirectoryUtils.getOutputDir(processingId)
+        ));
+
+        FileTask fileTask = FileTask
+            .builder()
+            .processingId(processingId)
+            .status(FileTaskStatus.SPLIT_PROCESSING)
+            .chunkSize(chunkSize)
+            .splitMode(SplitMode.STREAM)
+            .compression(compression)
+            .originalName(fileName)
+            .fileSize(contentLength >= 0 ? contentLength : null)
+            .timestamp(LocalDateTime.now())
+            .build();
         logOfProcessRepository.save(fileTask);
 
+        File spoolFile = stagedFileRegistry.stage(processingId, DirectoryUtils.createSpoolFile(fileName));
+
+        FileSplitter splitter = splitterManager.createSplitter(
+            processingId,
+            -1,
+            compression,
+            channel
+        );
+
+        try {
+            splitter.splitStream(input, contentLength, chunkSize, spoolFile);
+
+            // Без Content-Length размер известен только после приема тела
+            logOfProcessRepository.updateFileSizeById(processingId, spoolFile.length());
+            logOfProcessRepository.updateFileDigestById(processingId, splitter.getFileDigest());
+            logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.SPLIT_COMPLETED);
+            logOfProcessRepository.updateTimestampById(processingId, LocalDateTime.now());
+        } catch (IOException e) {
+            logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.SPLIT_FAILED);
+            abandonTransfer(processingId);
+            throw new FileNotSplitedException();
+        }
         return processingId;
     }
 
+    // Файл загрузки частями: части пишутся в него по смещению
+    public File stageUpload(String processingId, String fileName) throws IOException {
+        return stagedFileRegistry.stage(processingId, DirectoryUtils.createSpoolFile(fileName));
+    }
+
+    // Загруженный файл, из которого будет разбиение
+    public File getStagedFile(String processingId) {
+        return stagedFileRegistry.getStagedFile(processingId);
+    }
+
+    public void releaseStagedFile(String processingId) {
+        stagedFileRegistry.release(processingId);
+    }
+
+    public String getFileDigestById(String processingId) {
+        return findFileTaskById(processingId).getFileDigest();
+    }
+
     public FileTaskStatus getStatusById(String processingId) {
         return logOfProcessRepository
             .findStatusById(processingId)
             .orElseThrow(() -> new FileProcessNotFoundException(processingId));
     }
 
+    public FileSplitter getActiveSplitter(String processingId) {
+        return splitterManager.getSplitter(processingId);
+    }
+
     public Page<FileTask> getAllTasks(
         int page, 
         int limit,
@@ -97,57 +224,181 @@ public class FileService {
         return logOfProcessRepository.findAll(PageRequest.of(page, limit, sort));
     }
 
-    @Transactional
     public void splittingFileIntoChunks(String processingId) {
+        splittingFileIntoChunks(processingId, getStagedFile(processingId));
+    }
+
+    // Файл передается явно: фоновое разбиение идет уже после приема следующих загрузок.
+    // Общей транзакции нет: каждое обновление статуса фиксируется сразу и видно клиенту,
+    // а соединение из пула не удерживается на все время разбиения
+    public void splittingFileIntoChunks(String processingId, File source) {
         FileTask fileTask = findFileTaskById(processingId);
         
         try {
             logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.SPLIT_PROCESSING);
 
-            long fileSize    = this.tempFile.length();
+            long fileSize    = source.length();
             int  totalChunks = (int) Math.ceil((double) fileSize / fileTask.getChunkSize());
 
             FileSplitter splitter = splitterManager.createSplitter(
                 processingId,
                 totalChunks,
+                fileTask.getCompression(),
                 channel
             );
 
             // Разбиение файла на чанки
             splitter.splitFile(
-                this.tempFile,
-                fileTask.getChunkSize()
+                source,
+                fileTask.getChunkSize(),
+                fileTask.getSplitMode()
             );
 
+            logOfProcessRepository.updateFileDigestById(processingId, splitter.getFileDigest());
             logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.SPLIT_COMPLETED);
             logOfProcessRepository.updateTimestampById(processingId, LocalDateTime.now());
 
         } catch (IOException e) {
             logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.SPLIT_FAILED);
+            abandonTransfer(processingId);
             throw new FileNotSplitedException();
+        } catch (RuntimeException e) {
+
+            // Отката нет, поэтому SPLIT_PROCESSING не должен остаться после сбоя
+            logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.SPLIT_FAILED);
+            abandonTransfer(processingId);
+            throw e;
+        }
+    }
+
+    // Разбиение не удалось: отправитель и сборщик уже отправленной части больше не нужны,
+    // иначе сборщик опрашивал бы отправителя до истечения простоя
+    public void abandonTransfer(String processingId) {
+        splitterManager.removeSplitter(processingId);
+        assemblerManager.discardAssembler(processingId);
+    }
+
+    // Имя собранного файла берется из исходного имени задачи, путь из имени отбрасывается
+    public String getAssembledFileName(String processingId) {
+        return toAssembledFileName(processingId, findFileTaskById(processingId).getOriginalName());
+    }
+
+    private static String toAssembledFileName(String processingId, String originalName) {
+        if (originalName == null || originalName.isBlank()) {
+            return "assembled_" + processingId;
         }
+        return "assembled_" + new File(originalName).getName();
+    }
+
+    // Сборщик, принимающий чанки: из него читается префикс при прогрессивном скачивании
+    public FileAssembler getAssembler(String processingId) {
+        return assemblerManager.getAssembler(processingId);
+    }
+
+    // Статус обновляется по завершении future, поток запроса не блокируется на время сборки
+    public CompletableFuture<Void> assembleFileFromChunks(String processingId) {
+        logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.ASSEMBLE_PROCESSING);
+
+        FileAssembler assembler = assemblerManager.getAssembler(processingId);
+
+        // Сборка файла
+        return assembler
+            .assembleFile(
+                DirectoryUtils.getOutputDir(processingId) + getAssembledFileName(processingId)
+            )
+            .handle((result, error) -> {
+                if (error == null) {
+                    registerContent(processingId);
+
+                    // Статус обновляется до удаления сборщика: скачивание после удаления
+                    // уже видит готовый файл и не создает пустой сборщик
+                    logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.ASSEMBLE_COMPLETED);
+                    logOfProcessRepository.updateTimestampById(processingId, LocalDateTime.now());
+                    assemblerManager.removeAssembler(processingId);
+                    return result;
+                }
+
+                logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.ASSEMBLE_FAILED);
+
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+                if (cause instanceof CustomHttpException) {
+                    throw new CompletionException(cause);
+                }
+                throw new FileNotAssembledException();
+            });
     }
 
-    @Transactional
-    public void assembleFileFromChunks(String processingId) {
+    // Собранный файл попадает в индекс по хэшу: следующая такая же загрузка его переиспользует.
+    // Ошибка индекса не влияет на сборку, файл просто не будет переиспользован
+    private void registerContent(String processingId) {
+        String digest = findFileTaskById(processingId).getFileDigest();
+        if (digest == null || logOfProcessRepository.claimContentDigestById(processingId, digest) == 0) {
+            return;
+        }
 
         try {
-            logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.ASSEMBLE_PROCESSING);
-            
-            FileAssembler assembler = assemblerManager.getAssembler(processingId);
+            fileContentIndex.register(digest, DirectoryUtils.getOutputFile(processingId));
+        } catch (IOException | RuntimeException e) {
+            logOfProcessRepository.clearContentDigestById(processingId);
+            System.err.println("Failed to register content (id " + processingId + "): " + e.getMessage());
+        }
+    }
 
-            // Сборка файла
-            assembler.assembleFile(
-                DirectoryUtils.getOutputDir(processingId) + "assembled_" + this.tempFile.getName()
-            );
-            assemblerManager.removeAssembler(processingId);
+    // Задача без жесткой ссылки читает собранный файл из индекса по хэшу
+    public File getOutputFile(String processingId) {
+        File[] files = new File(DirectoryUtils.getOutputDir(processingId)).listFiles(File::isFile);
+        if (files == null || files.length == 0) {
+            String digest   = findFileTaskById(processingId).getContentDigest();
+            Path   location = digest != null ? fileContentIndex.getLocation(digest) : null;
+            if (location != null) {
+                return location.toFile();
+            }
+        }
+        return DirectoryUtils.getOutputFile(processingId);
+    }
 
-            logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.ASSEMBLE_COMPLETED);
-            logOfProcessRepository.updateTimestampById(processingId, LocalDateTime.now());
-        
-        } catch (IOException | InterruptedException e) {
-            logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.ASSEMBLE_FAILED);
-            throw new FileNotAssembledException();
+    // Файлы задачи удаляются вместе с записью, общее содержимое - только с последней ссылкой
+    public void deleteTask(String processingId) {
+        FileTask fileTask = findFileTaskById(processingId);
+        if (IN_PROGRESS_STATUSES.contains(fileTask.getStatus())) {
+            throw new FileTaskInProgressException(processingId);
+        }
+
+        logOfProcessRepository.deleteById(processingId);
+        releaseStagedFile(processingId);
+
+        // Разбитая, но не собранная задача еще держит отправителя и, возможно, сборщик
+        splitterManager.removeSplitter(processingId);
+        assemblerManager.discardAssembler(processingId);
+
+        Path shared = fileTask.getContentDigest() != null
+            ? fileContentIndex.release(fileTask.getContentDigest())
+            : null;
+
+        Path   kept      = shared != null ? shared.toAbsolutePath() : null;
+        Path   outputDir = Paths.get(DirectoryUtils.getOutputDir(processingId)).toAbsolutePath();
+        File[] files     = outputDir.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.toPath().toAbsolutePath().equals(kept)) {
+                    deleteTaskFile(processingId, file.toPath());
+                }
+            }
+        }
+
+        // Каталог с местом хранения общего содержимого удалит освобождение последней ссылки
+        if (kept == null || !kept.startsWith(outputDir)) {
+            deleteTaskFile(processingId, outputDir);
+        }
+    }
+
+    private void deleteTaskFile(String processingId, Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Failed to delete " + path + " (id " + processingId + "): " + e.getMessage());
         }
     }
 }
@@ -0,0 +1,67 @@
+package com.pentryyy.fragmented_file_transfer_api.service;
+
+import java.io.File;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.pentryyy.fragmented_file_transfer_api.enumeration.FileTaskStatus;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.SplitRejectionPolicy;
+import com.pentryyy.fragmented_file_transfer_api.exception.SplitQueueFullException;
+import com.pentryyy.fragmented_file_transfer_api.repository.LogOfProcessRepository;
+
+@Service
+public class FileSplitQueue {
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private LogOfProcessRepository logOfProcessRepository;
+
+    @Autowired
+    @Qualifier("splitExecutor")
+    private ThreadPoolExecutor splitExecutor;
+
+    @Value("${transfer.split.rejection-policy:REJECT}")
+    private SplitRejectionPolicy rejectionPolicy;
+
+    // Возвращает true, если разбиение поставлено в очередь, и false, если по политике
+    // CALLER_RUNS оно уже выполнено на потоке запроса
+    public boolean submit(String processingId) {
+        File source = fileService.getStagedFile(processingId);
+
+        logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.SPLIT_QUEUED);
+        try {
+            splitExecutor.execute(() -> split(processingId, source));
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (rejectionPolicy == SplitRejectionPolicy.CALLER_RUNS) {
+                fileService.splittingFileIntoChunks(processingId, source);
+                return false;
+            }
+
+            // Очередь заполнена: задача прерывается, загруженный файл удаляется
+            logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.PROCESS_INTERRUPTED);
+            fileService.releaseStagedFile(processingId);
+            throw new SplitQueueFullException();
+        }
+    }
+
+    // Ошибка фонового разбиения видна клиенту через статус SPLIT_FAILED
+    private void split(String processingId, File source) {
+        try {
+            fileService.splittingFileIntoChunks(processingId, source);
+        } catch (RuntimeException e) {
+            System.err.println("Background splitting failed (id " + processingId + "): " + e.getMessage());
+        }
+    }
+
+    public int getQueuedCount() {
+        return splitExecutor.getQueue().size();
+    }
+}
@@ -0,0 +1,37 @@
+package com.pentryyy.fragmented_file_transfer_api.service;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Service;
+
+import com.pentryyy.fragmented_file_transfer_api.exception.FileProcessNotFoundException;
+
+// Загруженные файлы по processingId: из них идет разбиение и повторная отправка
+// потерянных чанков. Файл освобождается после подтверждения доставки или отмены задачи
+@Service
+public class StagedFileRegistry {
+
+    private final Map<String, File> stagedFiles = new ConcurrentHashMap<>();
+
+    public File stage(String processingId, File file) {
+        stagedFiles.put(processingId, file);
+        return file;
+    }
+
+    public File getStagedFile(String processingId) {
+        File file = stagedFiles.get(processingId);
+        if (file == null) {
+            throw new FileProcessNotFoundException(processingId);
+        }
+        return file;
+    }
+
+    public void release(String processingId) {
+        File file = stagedFiles.remove(processingId);
+        if (file != null && file.exists() && !file.delete()) {
+            System.err.println("Failed to delete staged file (id " + processingId + "): " + file);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.pentryyy.fragmented_file_transfer_api.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.pentryyy.fragmented_file_transfer_api.component.KafkaTransmissionChannel;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.FileTaskStatus;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.SplitMode;
+import com.pentryyy.fragmented_file_transfer_api.exception.FileNotSplitedException;
+import com.pentryyy.fragmented_file_transfer_api.exception.UploadIncompleteException;
+import com.pentryyy.fragmented_file_transfer_api.exception.UploadPartInvalidException;
+import com.pentryyy.fragmented_file_transfer_api.exception.UploadSessionLimitExceededException;
+import com.pentryyy.fragmented_file_transfer_api.exception.UploadSessionNotFoundException;
+import com.pentryyy.fragmented_file_transfer_api.model.FileTask;
+import com.pentryyy.fragmented_file_transfer_api.repository.LogOfProcessRepository;
+import com.pentryyy.fragmented_file_transfer_api.service.kafka.FileSplitterManager;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.HashedWheelTimer;
+import com.pentryyy.fragmented_file_transfer_api.transfer.sender.FileSplitter;
+import com.pentryyy.fragmented_file_transfer_api.transfer.sender.UploadSession;
+import com.pentryyy.fragmented_file_transfer_api.utils.DirectoryUtils;
+
+@Service
+public class UploadSessionManager {
+
+    private final Map<String, UploadSession>           sessions = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Void>> splits   = new ConcurrentHashMap<>();
+
+    // Разбиение сессии ждет частей и не должно занимать поток платформы
+    private final ExecutorService splitThreads = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Места под сессии: занимаются до создания сессии, освобождаются тем, кто убрал ее из таблицы.
+    // Проверка лимита и занятие места - один CAS, одновременные запросы не превысят maxSessions
+    private final AtomicInteger openSessions = new AtomicInteger();
+
+    // Обход брошенных сессий запускается с первой сессией и дальше перепланирует себя сам
+    private final AtomicBoolean reaperStarted = new AtomicBoolean(false);
+
+    @Value("${transfer.upload.max-sessions:100}")
+    private int maxSessions;
+
+    @Value("${transfer.upload.idle-timeout-seconds:600}")
+    private long idleTimeoutSeconds;
+
+    @Autowired
+    private HashedWheelTimer timer;
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private LogOfProcessRepository logOfProcessRepository;
+
+    @Autowired
+    private KafkaTransmissionChannel channel;
+
+    @Autowired
+    private FileSplitterManager splitterManager;
+
+    private void reserveSlot() {
+        int current;
+        do {
+            current = openSessions.get();
+            if (current >= maxSessions) {
+                throw new UploadSessionLimitExceededException(maxSessions);
+            }
+        } while (!openSessions.compareAndSet(current, current + 1));
+    }
+
+    // Место сессии освобождается один раз - тем, кто убрал ее из таблицы
+    private boolean removeSession(String processingId, UploadSession session) {
+        if (sessions.remove(processingId, session)) {
+            openSessions.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private UploadSession getSession(String processingId) {
+        UploadSession session = sessions.get(processingId);
+        if (session == null) {
+            throw new UploadSessionNotFoundException(processingId);
+        }
+        return session;
+    }
+
+    // Размер части округляется вниз до кратного размеру чанка: чанк не пересекает границу части
+    public UploadSession openSession(
+        String fileName,
+        long fileSize,
+        int partSize,
+        int chunkSize,
+        CompressionType compression
+    ) throws IOException {
+        if (fileSize < 0 || chunkSize <= 0 || partSize < chunkSize) {
+            throw new UploadPartInvalidException("размер файла, части и чанка должны быть положительными, часть не меньше чанка");
+        }
+        reserveSlot();
+        startReaper();
+
+        String        processingId = UUID.randomUUID().toString();
+        UploadSession session;
+        try {
+            Files.createDirectories(Paths.get(
+                DirectoryUtils.getOutputDir(processingId)
+            ));
+
+            FileTask fileTask = FileTask
+                .builder()
+                .processingId(processingId)
+                .status(FileTaskStatus.CREATED)
+                .chunkSize(chunkSize)
+                .splitMode(SplitMode.STREAM)
+                .compression(compression)
+                .originalName(fileName)
+                .fileSize(fileSize)
+                .timestamp(LocalDateTime.now())
+                .build();
+            logOfProcessRepository.save(fileTask);
+
+            File stagedFile = fileService.stageUpload(processingId, fileName);
+            session = new UploadSession(
+                processingId,
+                stagedFile,
+                fileSize,
+                partSize / chunkSize * chunkSize
+            );
+        } catch (IOException | RuntimeException e) {
+            openSessions.decrementAndGet();
+            throw e;
+        }
+        sessions.put(processingId, session);
+
+        FileSplitter splitter = splitterManager.createSplitter(
+            processingId,
+            (int) Math.ceil((double) fileSize / chunkSize),
+            compression,
+            channel
+        );
+
+        // Чанки уходят в Kafka по мере прихода частей, не дожидаясь фиксации загрузки
+        logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.SPLIT_PROCESSING);
+        splits.put(processingId, CompletableFuture.runAsync(() -> split(session, splitter, chunkSize), splitThreads));
+
+        return session;
+    }
+
+    private void split(UploadSession session, FileSplitter splitter, int chunkSize) {
+        String processingId = session.getProcessingId();
+        try {
+            splitter.splitUpload(session, chunkSize);
+
+            logOfProcessRepository.updateFileDigestById(processingId, splitter.getFileDigest());
+            logOfProcessRepository.updateStatusById(processingId, FileTaskStatus.SPLIT_COMPLETED);
+            logOfProcessRepository.updateTimestampById(processingId, LocalDateTime.now());
+        } catch (IOException e) {
+            FileTaskStatus status = session.isAborted()
+                ? FileTaskStatus.PROCESS_INTERRUPTED
+                : FileTaskStatus.SPLIT_FAILED;
+            logOfProcessRepository.updateStatusById(processingId, status);
+            fileService.abandonTransfer(processingId);
+            throw new CompletionException(new FileNotSplitedException());
+        } finally {
+            try {
+                session.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close upload session (id " + processingId + "): " + e.getMessage());
+            }
+        }
+    }
+
+    public void writePart(String processingId, int part, InputStream body) throws IOException {
+        getSession(processingId).writePart(part, body);
+    }
+
+    public UploadSession getUploadSession(String processingId) {
+        UploadSession session = getSession(processingId);
+        session.touch();
+        return session;
+    }
+
+    // Фиксация: все части на месте, ответ - по завершении отправки последних чанков
+    public CompletableFuture<Void> commit(String processingId) {
+        UploadSession session = getSession(processingId);
+        if (session.getMissingParts() > 0) {
+            throw new UploadIncompleteException(session.getMissingParts());
+        }
+
+        // Сессию могли отменить между проверкой и этой строкой
+        CompletableFuture<Void> split = splits.get(processingId);
+        if (split == null) {
+            throw new UploadSessionNotFoundException(processingId);
+        }
+
+        return split.whenComplete((result, error) -> {
+            removeSession(processingId, session);
+            splits.remove(processingId);
+        });
+    }
+
+    public void abort(String processingId) {
+        UploadSession session = sessions.get(processingId);
+        if (session == null || !removeSession(processingId, session)) {
+            throw new UploadSessionNotFoundException(processingId);
+        }
+        discard(processingId, session);
+    }
+
+    // Отправленные чанки уже могли создать сборщик: он останавливается вместе с отправителем
+    private void discard(String processingId, UploadSession session) {
+        session.abort();
+        splits.remove(processingId);
+        fileService.abandonTransfer(processingId);
+        fileService.releaseStagedFile(processingId);
+    }
+
+    private void startReaper() {
+        if (reaperStarted.compareAndSet(false, true)) {
+            scheduleReaper();
+        }
+    }
+
+    private void scheduleReaper() {
+        long period = Math.max(1, idleTimeoutSeconds / 4);
+        timer.schedule(this::reapIdleSessions, period, TimeUnit.SECONDS);
+    }
+
+    // Брошенная недогруженная сессия отменяется: разбиение завершается статусом
+    // PROCESS_INTERRUPTED, промежуточный файл удаляется. Полностью загруженная сессия
+    // без фиксации только убирается из таблицы, когда ее чанки уже отправлены
+    private void reapIdleSessions() {
+        try {
+            long now     = System.nanoTime();
+            long timeout = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+
+            for (Map.Entry<String, UploadSession> entry : sessions.entrySet()) {
+                String        processingId = entry.getKey();
+                UploadSession session      = entry.getValue();
+                if (!session.isIdle(now, timeout)) {
+                    continue;
+                }
+
+                if (session.getMissingParts() > 0) {
+                    if (removeSession(processingId, session)) {
+                        System.out.println("Upload session expired (id " + processingId + ")");
+                        discard(processingId, session);
+                    }
+                } else {
+                    CompletableFuture<Void> split = splits.get(processingId);
+                    if (split == null || split.isDone()) {
+                        removeSession(processingId, session);
+                        splits.remove(processingId);
+                    }
+                }
+            }
+        } finally {
+            scheduleReaper();
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.pentryyy.fragmented_file_transfer_api.service.kafka;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
 import com.pentryyy.fragmented_file_transfer_api.transfer.core.Chunk;
+import com.pentryyy.fragmented_file_transfer_api.transfer.receiver.FileAssembler;
 
 @Service
 public class ChunkReceiver {
@@ -12,11 +18,27 @@ public class ChunkReceiver {
     @Autowired
     private FileAssemblerManager assemblerManager;
 
+    // Пакет опроса группируется по передаче: один поиск сборщика и один вызов на группу
     @KafkaListener(
         topics = "file-chunks", 
         containerFactory = "chunkListenerContainerFactory"
     )
-    public void receiveChunk(Chunk chunk) {
-        assemblerManager.getAssembler(chunk.getProcessingId()).receiveChunk(chunk);
+    public void receiveChunks(List<Chunk> chunks) {
+        Map<String, List<Chunk>> byTransfer = new LinkedHashMap<>();
+        for (Chunk chunk : chunks) {
+
+            // Записи, не прошедшие десериализацию, приходят пустыми
+            if (chunk == null) {
+                continue;
+            }
+            byTransfer.computeIfAbsent(chunk.getProcessingId(), id -> new ArrayList<>()).add(chunk);
+        }
+
+        for (Map.Entry<String, List<Chunk>> transfer : byTransfer.entrySet()) {
+            FileAssembler assembler = assemblerManager.findAssemblerForChunks(transfer.getKey());
+            if (assembler != null) {
+                assembler.receiveChunks(transfer.getValue());
+            }
+        }
     }
 }
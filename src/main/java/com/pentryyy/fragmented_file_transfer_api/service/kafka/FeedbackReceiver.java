@@ -4,7 +4,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import com.pentryyy.fragmented_file_transfer_api.service.StagedFileRegistry;
 import com.pentryyy.fragmented_file_transfer_api.transfer.core.Feedback;
+import com.pentryyy.fragmented_file_transfer_api.transfer.sender.FileSplitter;
 
 @Service
 public class FeedbackReceiver {
@@ -12,11 +14,25 @@ public class FeedbackReceiver {
     @Autowired
     private FileSplitterManager splitterManager;
 
+    @Autowired
+    private StagedFileRegistry stagedFileRegistry;
+
     @KafkaListener(
         topics = "file-feedbacks", 
         containerFactory = "feedbackListenerContainerFactory"
     )
     public void receiveFeedback(Feedback feedback) {
-        splitterManager.getSplitter(feedback.getProcessingId()).receiveFeedback(feedback);
+        FileSplitter splitter = splitterManager.getSplitter(feedback.getProcessingId());
+        if (splitter == null) {
+            return;
+        }
+
+        splitter.receiveFeedback(feedback);
+
+        // Получатель подтвердил доставку - источник больше не нужен
+        if (splitter.isDeliveryComplete()) {
+            splitterManager.removeSplitter(feedback.getProcessingId());
+            stagedFileRegistry.release(feedback.getProcessingId());
+        }
     }
 }
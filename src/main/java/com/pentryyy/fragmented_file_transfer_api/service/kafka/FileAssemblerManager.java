@@ -1,31 +1,132 @@
 package com.pentryyy.fragmented_file_transfer_api.service.kafka;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.pentryyy.fragmented_file_transfer_api.component.KafkaTransmissionChannel;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.HashedWheelTimer;
+import com.pentryyy.fragmented_file_transfer_api.transfer.receiver.ChunkStore;
 import com.pentryyy.fragmented_file_transfer_api.transfer.receiver.FileAssembler;
+import com.pentryyy.fragmented_file_transfer_api.utils.DirectoryUtils;
 
 @Service
 public class FileAssemblerManager {
 
+    // Сколько последних завершенных передач помнить, чтобы отбрасывать их поздние чанки
+    private static final int MAX_TOMBSTONES = 10_000;
+
     private final Map<String, FileAssembler> assemblers = new ConcurrentHashMap<>();
+
+    // Повторно доставленный или запоздавший чанк завершенной передачи не создает новый сборщик:
+    // его метаданные уже не придут, а обратная связь шла бы бесконечно
+    private final Set<String> tombstones = Collections.newSetFromMap(Collections.synchronizedMap(
+        new LinkedHashMap<>(MAX_TOMBSTONES, 0.75f) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_TOMBSTONES;
+            }
+        }
+    ));
+
+    // Обход брошенных сборок запускается с первым сборщиком и дальше перепланирует себя сам
+    private final AtomicBoolean reaperStarted = new AtomicBoolean(false);
+
+    @Value("${transfer.assembly.idle-timeout-seconds:300}")
+    private long idleTimeoutSeconds = 300;
+
     private final KafkaTransmissionChannel   channel;
+    private final HashedWheelTimer           feedbackTimer;
+    private final ChunkStore                 chunkStore;
 
-    public FileAssemblerManager(KafkaTransmissionChannel channel) {
-        this.channel = channel;
+    public FileAssemblerManager(
+        KafkaTransmissionChannel channel, 
+        HashedWheelTimer feedbackTimer, 
+        ChunkStore chunkStore
+    ) {
+        this.channel       = channel;
+        this.feedbackTimer = feedbackTimer;
+        this.chunkStore    = chunkStore;
     }
 
     public FileAssembler getAssembler(String processingId) {
-        return assemblers.computeIfAbsent(
+        return assemblers.computeIfAbsent(processingId, this::createAssembler);
+    }
+
+    private FileAssembler createAssembler(String processingId) {
+        startReaper();
+        return new FileAssembler(
             processingId, 
-            id -> new FileAssembler(id, channel)
+            channel, 
+            feedbackTimer, 
+            DirectoryUtils.getPartFile(processingId), 
+            chunkStore
+        );
+    }
+
+    // Сборщик для чанков из Kafka: null, если передача уже завершена
+    public FileAssembler findAssemblerForChunks(String processingId) {
+        return assemblers.computeIfAbsent(
+            processingId,
+            id -> tombstones.contains(id) ? null : createAssembler(id)
         );
     }
 
+    // Отметка ставится до удаления: чанк, прошедший между ними, попадет в старый сборщик
     public void removeAssembler(String processingId) {
+        tombstones.add(processingId);
         assemblers.remove(processingId);
     }
+
+    // Удаление задачи: незавершенная сборка останавливается вместе с опросом отправителя
+    public void discardAssembler(String processingId) {
+        tombstones.add(processingId);
+        FileAssembler assembler = assemblers.remove(processingId);
+        if (assembler != null) {
+            assembler.discard();
+        }
+    }
+
+    private void startReaper() {
+        if (reaperStarted.compareAndSet(false, true)) {
+            scheduleReaper();
+        }
+    }
+
+    private void scheduleReaper() {
+        long period = Math.max(1, idleTimeoutSeconds / 4);
+        feedbackTimer.schedule(this::reapIdleAssemblers, period, TimeUnit.SECONDS);
+    }
+
+    // Сборка, к которой давно не приходили чанки, отменяется: отправитель пропал,
+    // а файл сборки уже занимает на диске полный размер
+    private void reapIdleAssemblers() {
+        try {
+            long now     = System.nanoTime();
+            long timeout = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+
+            for (Map.Entry<String, FileAssembler> entry : assemblers.entrySet()) {
+                String        processingId = entry.getKey();
+                FileAssembler assembler    = entry.getValue();
+                if (!assembler.isIdle(now, timeout)) {
+                    continue;
+                }
+
+                tombstones.add(processingId);
+                if (assemblers.remove(processingId, assembler)) {
+                    System.out.println("Assembly expired (id " + processingId + ")");
+                    assembler.discard();
+                }
+            }
+        } finally {
+            scheduleReaper();
+        }
+    }
 }
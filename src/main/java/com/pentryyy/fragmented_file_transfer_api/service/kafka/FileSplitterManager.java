@@ -1,11 +1,18 @@
 package com.pentryyy.fragmented_file_transfer_api.service.kafka;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.pentryyy.fragmented_file_transfer_api.component.KafkaTransmissionChannel;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
+import com.pentryyy.fragmented_file_transfer_api.service.StagedFileRegistry;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.HashedWheelTimer;
 import com.pentryyy.fragmented_file_transfer_api.transfer.sender.FileSplitter;
 
 @Service
@@ -13,17 +20,37 @@ public class FileSplitterManager {
 
     private final Map<String, FileSplitter> splitters = new ConcurrentHashMap<>();
 
+    // Обход брошенных отправителей запускается с первым отправителем и дальше перепланирует себя сам
+    private final AtomicBoolean reaperStarted = new AtomicBoolean(false);
+
+    @Value("${transfer.split.idle-timeout-seconds:600}")
+    private long idleTimeoutSeconds = 600;
+
+    private final HashedWheelTimer   timer;
+    private final StagedFileRegistry stagedFileRegistry;
+
+    public FileSplitterManager(
+        HashedWheelTimer timer,
+        StagedFileRegistry stagedFileRegistry
+    ) {
+        this.timer              = timer;
+        this.stagedFileRegistry = stagedFileRegistry;
+    }
+
     public FileSplitter createSplitter(
         String processingId, 
         int totalChunks, 
+        CompressionType compression,
         KafkaTransmissionChannel channel
     ) {
         FileSplitter splitter = new FileSplitter(
             processingId, 
             totalChunks, 
+            compression,
             channel
         );
         
+        startReaper();
         splitters.put(processingId, splitter);
         return splitter;
     }
@@ -33,6 +60,52 @@ public class FileSplitterManager {
     }
 
     public void removeSplitter(String processingId) {
-        splitters.remove(processingId);
+        FileSplitter splitter = splitters.remove(processingId);
+        if (splitter == null) {
+            return;
+        }
+
+        try {
+            splitter.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close splitter (id " + processingId + "): " + e.getMessage());
+        }
+    }
+
+    private void startReaper() {
+        if (reaperStarted.compareAndSet(false, true)) {
+            scheduleReaper();
+        }
+    }
+
+    private void scheduleReaper() {
+        long period = Math.max(1, idleTimeoutSeconds / 4);
+        timer.schedule(this::reapIdleSplitters, period, TimeUnit.SECONDS);
+    }
+
+    // Получатель давно не отвечает (сборка отменена по простою или узел пропал): отправитель
+    // с открытым файлом и картами отправленных освобождается вместе с загруженным файлом
+    private void reapIdleSplitters() {
+        try {
+            long now     = System.nanoTime();
+            long timeout = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+
+            for (Map.Entry<String, FileSplitter> entry : splitters.entrySet()) {
+                String processingId = entry.getKey();
+                if (!entry.getValue().isIdle(now, timeout) || !splitters.remove(processingId, entry.getValue())) {
+                    continue;
+                }
+
+                System.out.println("Splitter expired (id " + processingId + ")");
+                try {
+                    entry.getValue().close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close splitter (id " + processingId + "): " + e.getMessage());
+                }
+                stagedFileRegistry.release(processingId);
+            }
+        } finally {
+            scheduleReaper();
+        }
     }
 }
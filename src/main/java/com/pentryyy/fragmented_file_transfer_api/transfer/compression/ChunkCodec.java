@@ -0,0 +1,15 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.compression;
+
+import java.nio.ByteBuffer;
+
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
+
+public interface ChunkCodec {
+
+    CompressionType getType();
+
+    // Сжатые данные или null, если результат не уложился в maxLength
+    ByteBuffer compress(ByteBuffer source, int maxLength);
+
+    ByteBuffer decompress(ByteBuffer source, int originalLength);
+}
@@ -0,0 +1,90 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.compression;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Chunk;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Integrity;
+
+public final class ChunkCompression {
+
+    // Размер пробы, по которой решается, стоит ли сжимать чанк целиком
+    private static final int SAMPLE_SIZE = 4 * 1024;
+
+    // Сжатие принимается, только если экономит не меньше 10%
+    private static final double MAX_RATIO = 0.9;
+
+    private static final Map<CompressionType, ChunkCodec> CODECS = new EnumMap<>(CompressionType.class);
+
+    static {
+        CODECS.put(CompressionType.DEFLATE, new DeflateChunkCodec());
+        CODECS.put(CompressionType.LZ4,     new Lz4ChunkCodec());
+    }
+
+    private ChunkCompression() {}
+
+    public static Chunk compress(Chunk chunk, CompressionType type) {
+        ChunkCodec codec = CODECS.get(type);
+        if (codec == null || chunk.isCompressed() || chunk.getSequenceNumber() < 0) {
+            return chunk;
+        }
+
+        ByteBuffer data   = chunk.getData().duplicate();
+        int        length = data.remaining();
+
+        // Проба: несжимаемые данные (архивы, медиа) отправляются как есть
+        if (length > SAMPLE_SIZE) {
+            ByteBuffer sample = data.duplicate().limit(data.position() + SAMPLE_SIZE);
+            if (codec.compress(sample, maxLength(SAMPLE_SIZE)) == null) {
+                return chunk;
+            }
+        }
+
+        ByteBuffer compressed = codec.compress(data, maxLength(length));
+        if (compressed == null) {
+            return chunk;
+        }
+
+        // CRC32C покрывает сжатые байты: получатель проверяет его до распаковки
+        return new Chunk(
+            chunk.getSequenceNumber(), 
+            compressed, 
+            chunk.getProcessingId(), 
+            type, 
+            length,
+            chunk.hasChecksum() ? Integrity.checksum(compressed) : Integrity.NO_CHECKSUM
+        );
+    }
+
+    // maxLength - верхняя граница исходной длины: заголовок приходит из сети,
+    // и буфер под распаковку не выделяется по непроверенному значению
+    public static Chunk decompress(Chunk chunk, int maxLength) {
+        if (!chunk.isCompressed()) {
+            return chunk;
+        }
+
+        int originalLength = chunk.getOriginalLength();
+        if (originalLength <= 0 || originalLength > maxLength) {
+            throw new IllegalStateException("Original length " + originalLength + " is out of bounds (max " + maxLength + ")");
+        }
+
+        ChunkCodec codec = CODECS.get(chunk.getCompression());
+        ByteBuffer data  = codec.decompress(chunk.getData().duplicate(), originalLength);
+
+        // Целостность уже проверена по сжатым байтам
+        return new Chunk(
+            chunk.getSequenceNumber(), 
+            data, 
+            chunk.getProcessingId(), 
+            CompressionType.NONE, 
+            originalLength,
+            Integrity.NO_CHECKSUM
+        );
+    }
+
+    private static int maxLength(int length) {
+        return (int) (length * MAX_RATIO);
+    }
+}
@@ -0,0 +1,62 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.compression;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
+
+public class DeflateChunkCodec implements ChunkCodec {
+
+    @Override
+    public CompressionType getType() {
+        return CompressionType.DEFLATE;
+    }
+
+    @Override
+    public ByteBuffer compress(ByteBuffer source, int maxLength) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(source.duplicate());
+            deflater.finish();
+
+            // Буфер на байт больше лимита: если он заполнен, сжатие невыгодно
+            ByteBuffer target = ByteBuffer.allocate(maxLength + 1);
+            while (!deflater.finished() && target.hasRemaining()) {
+                deflater.deflate(target);
+            }
+
+            if (!deflater.finished() || target.position() > maxLength) {
+                return null;
+            }
+            return target.flip();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public ByteBuffer decompress(ByteBuffer source, int originalLength) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(source.duplicate());
+
+            ByteBuffer target = ByteBuffer.allocate(originalLength);
+            while (!inflater.finished() && target.hasRemaining()) {
+                if (inflater.inflate(target) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+            }
+
+            if (target.hasRemaining()) {
+                throw new IllegalStateException("Deflate payload is truncated");
+            }
+            return target.flip();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Deflate payload is corrupted", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.compression;
+
+import java.nio.ByteBuffer;
+
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+public class Lz4ChunkCodec implements ChunkCodec {
+
+    private final LZ4Compressor       compressor;
+    private final LZ4SafeDecompressor decompressor;
+
+    public Lz4ChunkCodec() {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor    = factory.fastCompressor();
+        this.decompressor  = factory.safeDecompressor();
+    }
+
+    @Override
+    public CompressionType getType() {
+        return CompressionType.LZ4;
+    }
+
+    @Override
+    public ByteBuffer compress(ByteBuffer source, int maxLength) {
+        ByteBuffer target = ByteBuffer.allocate(maxLength);
+        try {
+            int length = compressor.compress(
+                source, 
+                source.position(), 
+                source.remaining(), 
+                target, 
+                0, 
+                maxLength
+            );
+            return target.limit(length);
+        } catch (LZ4Exception e) {
+
+            // Сжатые данные не уместились в лимит
+            return null;
+        }
+    }
+
+    @Override
+    public ByteBuffer decompress(ByteBuffer source, int originalLength) {
+        ByteBuffer target = ByteBuffer.allocate(originalLength);
+        int        length;
+        try {
+
+            // Безопасный распаковщик не выходит за границы ни источника, ни приемника
+            length = decompressor.decompress(
+                source, 
+                source.position(), 
+                source.remaining(), 
+                target, 
+                0, 
+                originalLength
+            );
+        } catch (LZ4Exception e) {
+            throw new IllegalStateException("LZ4 payload is corrupted", e);
+        }
+
+        if (length != originalLength) {
+            throw new IllegalStateException("LZ4 payload is truncated");
+        }
+        return target;
+    }
+}
@@ -1,6 +1,9 @@
 package com.pentryyy.fragmented_file_transfer_api.transfer.core;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -10,7 +13,41 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor 
 @AllArgsConstructor
 public class Chunk implements Serializable {
-    private int    sequenceNumber;
-    private byte[] data;
-    private String processingId;
+    private int             sequenceNumber;
+    private ByteBuffer      data;
+    private String          processingId;
+    private CompressionType compression;
+    private int             originalLength;
+    private long            checksum;
+
+    public Chunk(int sequenceNumber, ByteBuffer data, String processingId) {
+        this(
+            sequenceNumber, 
+            data, 
+            processingId, 
+            CompressionType.NONE, 
+            data.remaining(), 
+            Integrity.checksum(data)
+        );
+    }
+
+    public Chunk(int sequenceNumber, byte[] data, String processingId) {
+        this(sequenceNumber, ByteBuffer.wrap(data), processingId);
+    }
+
+    public boolean hasChecksum() {
+        return checksum != Integrity.NO_CHECKSUM;
+    }
+
+    public boolean isCompressed() {
+        return compression != null && compression != CompressionType.NONE;
+    }
+
+    // Копия полезной нагрузки в массив (буфер чанка при этом не сдвигается)
+    public byte[] toByteArray() {
+        ByteBuffer view  = data.duplicate();
+        byte[]     bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
 }
@@ -0,0 +1,79 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.core;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+// Манифест передачи с дедупликацией: длина и SHA-256 каждого чанка. Передается страницами -
+// служебными чанками с номерами -3, -4, ... Страница: число страниц (4 байта),
+// номер первого чанка (4 байта), записи "длина (4 байта), SHA-256 (32 байта)"
+public final class ChunkManifest {
+
+    public static final int FIRST_PAGE_SEQUENCE = -3;
+    public static final int HASH_LENGTH         = 32;
+
+    // Страница укладывается в сообщение Kafka по умолчанию (1 МБ)
+    public static final int PAGE_ENTRIES = 16 * 1024;
+
+    private static final int HEADER_SIZE = 4 + 4;
+    private static final int ENTRY_SIZE  = 4 + HASH_LENGTH;
+
+    public record Page(int pageCount, int first, int[] lengths, byte[] hashes) {}
+
+    private ChunkManifest() {}
+
+    public static boolean isPageSequence(int sequence) {
+        return sequence <= FIRST_PAGE_SEQUENCE;
+    }
+
+    public static int toPageSequence(int page) {
+        return FIRST_PAGE_SEQUENCE - page;
+    }
+
+    public static int toPageIndex(int sequence) {
+        return FIRST_PAGE_SEQUENCE - sequence;
+    }
+
+    // Пустой файл описывается одной пустой страницей
+    public static int getPageCount(int chunks) {
+        return Math.max(1, (chunks + PAGE_ENTRIES - 1) / PAGE_ENTRIES);
+    }
+
+    public static byte[] encodePage(int page, int chunks, long[] offsets, byte[] hashes) {
+        int first = page * PAGE_ENTRIES;
+        int last  = Math.min(chunks, first + PAGE_ENTRIES);
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + (last - first) * ENTRY_SIZE);
+        out.putInt(getPageCount(chunks));
+        out.putInt(first);
+        for (int sequence = first; sequence < last; sequence++) {
+            out.putInt((int) (offsets[sequence + 1] - offsets[sequence]));
+            out.put(hashes, sequence * HASH_LENGTH, HASH_LENGTH);
+        }
+        return out.array();
+    }
+
+    public static Page decodePage(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        try {
+            int pageCount = in.getInt();
+            int first     = in.getInt();
+            if (pageCount <= 0 || first < 0 || in.remaining() % ENTRY_SIZE != 0) {
+                throw new IllegalArgumentException("Malformed manifest page");
+            }
+
+            int    entries = in.remaining() / ENTRY_SIZE;
+            int[]  lengths = new int[entries];
+            byte[] hashes  = new byte[entries * HASH_LENGTH];
+            for (int i = 0; i < entries; i++) {
+                lengths[i] = in.getInt();
+                in.get(hashes, i * HASH_LENGTH, HASH_LENGTH);
+                if (lengths[i] <= 0) {
+                    throw new IllegalArgumentException("Manifest entry #" + (first + i) + " has length " + lengths[i]);
+                }
+            }
+            return new Page(pageCount, first, lengths, hashes);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Manifest page is truncated", e);
+        }
+    }
+}
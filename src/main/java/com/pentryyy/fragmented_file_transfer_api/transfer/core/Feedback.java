@@ -1,7 +1,6 @@
 package com.pentryyy.fragmented_file_transfer_api.transfer.core;
 
 import java.io.Serializable;
-import java.util.Set;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -11,7 +10,40 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor 
 @AllArgsConstructor
 public class Feedback implements Serializable {
-    private String       processingId;
-    private int          totalChunks;
-    private Set<Integer> missingSequences;
+    private String         processingId;
+    private int            totalChunks;
+    private SequenceRanges missingSequences;
+
+    // Пропуски оценены только ниже этой границы, более старшие номера еще могут быть в пути
+    private int            horizon;
+
+    // Передача с дедупликацией: чанки манифеста, которых нет в хранилище получателя.
+    // null в обычной передаче
+    private SequenceRanges wantedSequences;
+
+    // Подтверждение непрерывного префикса между запросами пропусков: пропуски по нему
+    // не оцениваются, и отправитель только освобождает окно
+    private boolean        progress;
+
+    public Feedback(String processingId, int totalChunks, SequenceRanges missingSequences) {
+        this(processingId, totalChunks, missingSequences, totalChunks);
+    }
+
+    public Feedback(String processingId, int totalChunks, SequenceRanges missingSequences, int horizon) {
+        this(processingId, totalChunks, missingSequences, horizon, null);
+    }
+
+    public Feedback(
+        String processingId, 
+        int totalChunks, 
+        SequenceRanges missingSequences, 
+        int horizon, 
+        SequenceRanges wantedSequences
+    ) {
+        this(processingId, totalChunks, missingSequences, horizon, wantedSequences, false);
+    }
+
+    public static Feedback progress(String processingId, int totalChunks, int prefix, SequenceRanges wantedSequences) {
+        return new Feedback(processingId, totalChunks, SequenceRanges.empty(), prefix, wantedSequences, true);
+    }
 }
@@ -0,0 +1,199 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.core;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+// Общий таймер: задачи раскладываются по ячейкам колеса по сроку, за тик просматривается
+// одна ячейка, поэтому стоимость тика не зависит от числа таймеров. Поток колеса только
+// передает просроченные задачи исполнителю: задача может брать блокировки и ждать Kafka,
+// не задерживая остальные таймеры
+public class HashedWheelTimer implements Closeable {
+
+    private final String                    name;
+    private final long                      tickNanos;
+    private final int                       mask;
+    private final List<ArrayDeque<Timeout>> wheel;
+    private final ExecutorService           executor;
+
+    // Новые задачи передаются потоку колеса через очередь, ячейки трогает только он
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean  started = new AtomicBoolean();
+    private final long           startTime;
+
+    private volatile Thread  worker;
+    private volatile boolean running = true;
+    private long             tick;
+
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        this(name, tickDuration, unit, wheelSize, Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name(name + "-task-", 0).factory()
+        ));
+    }
+
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize, ExecutorService executor) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick duration and wheel size must be positive");
+        }
+
+        // Размер колеса округляется до степени двойки, чтобы ячейка бралась по маске
+        int size = Integer.highestOneBit(wheelSize - 1) << 1;
+        if (size <= 0) {
+            size = 1;
+        }
+
+        this.name      = name;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.mask      = size - 1;
+        this.wheel     = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            wheel.add(new ArrayDeque<>());
+        }
+
+        this.executor  = executor;
+        this.startTime = System.nanoTime();
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("Timer is stopped");
+        }
+
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay)));
+        pending.add(timeout);
+        start();
+        return timeout;
+    }
+
+    // Поток колеса запускается при первой задаче, а не в конструкторе
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+            worker = thread;
+            thread.start();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            waitForNextTick();
+            if (!running) {
+                break;
+            }
+
+            transferPending();
+            expire(wheel.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    private void waitForNextTick() {
+        long deadline = (tick + 1) * tickNanos;
+        while (running) {
+            long sleep = deadline - (System.nanoTime() - startTime);
+            if (sleep <= 0) {
+                return;
+            }
+            LockSupport.parkNanos(this, sleep);
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+
+            // Просроченная задача попадает в текущую ячейку и выполнится на этом тике
+            long calculated = timeout.deadline / tickNanos;
+            long ticks      = Math.max(calculated, tick);
+
+            timeout.remainingRounds = (calculated - tick) / wheel.size();
+            wheel.get((int) (ticks & mask)).add(timeout);
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.cancelled) {
+                iterator.remove();
+            } else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            } else {
+                iterator.remove();
+                try {
+                    executor.execute(() -> runTask(timeout));
+                } catch (RejectedExecutionException e) {
+
+                    // Исполнитель закрыт вместе с таймером
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void runTask(Timeout timeout) {
+        try {
+            timeout.task.run();
+        } catch (Throwable e) {
+            System.err.println("Timer task failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+
+        Thread thread = worker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(3));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        executor.shutdown();
+    }
+
+    public static final class Timeout {
+
+        private final Runnable task;
+        private final long     deadline;
+
+        private volatile boolean cancelled;
+        private long             remainingRounds;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task     = task;
+            this.deadline = deadline;
+        }
+
+        // Отмененная задача удаляется из ячейки при следующем ее просмотре
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.core;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+
+public final class Integrity {
+
+    public static final long NO_CHECKSUM = -1;
+
+    private static final String FILE_DIGEST_ALGORITHM = "SHA-256";
+
+    private Integrity() {}
+
+    // CRC32C использует аппаратные инструкции процессора, где они доступны
+    public static long checksum(ByteBuffer data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        return crc.getValue();
+    }
+
+    public static boolean isIntact(Chunk chunk) {
+        return chunk.getChecksum() == NO_CHECKSUM 
+            || chunk.getChecksum() == checksum(chunk.getData());
+    }
+
+    public static MessageDigest newFileDigest() {
+        try {
+            return MessageDigest.getInstance(FILE_DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(FILE_DIGEST_ALGORITHM + " is not available", e);
+        }
+    }
+}
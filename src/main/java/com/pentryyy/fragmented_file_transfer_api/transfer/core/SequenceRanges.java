@@ -0,0 +1,145 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Упорядоченный набор номеров чанков в виде непересекающихся диапазонов [start, end)
+public final class SequenceRanges implements Serializable {
+
+    private static final SequenceRanges EMPTY = new SequenceRanges(new int[0], 0);
+
+    // Пары start, end подряд
+    private final int[] bounds;
+    private final int   rangeCount;
+
+    private SequenceRanges(int[] bounds, int rangeCount) {
+        this.bounds     = bounds;
+        this.rangeCount = rangeCount;
+    }
+
+    public static SequenceRanges empty() {
+        return EMPTY;
+    }
+
+    public static SequenceRanges of(int... sequences) {
+        int[] sorted = sequences.clone();
+        Arrays.sort(sorted);
+
+        Builder builder = builder();
+        for (int sequence : sorted) {
+            builder.add(sequence);
+        }
+        return builder.build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean isEmpty() {
+        return rangeCount == 0;
+    }
+
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    public int getStart(int range) {
+        return bounds[range * 2];
+    }
+
+    public int getEnd(int range) {
+        return bounds[range * 2 + 1];
+    }
+
+    // Общее количество номеров во всех диапазонах
+    public long size() {
+        long size = 0;
+        for (int i = 0; i < rangeCount; i++) {
+            size += (long) getEnd(i) - getStart(i);
+        }
+        return size;
+    }
+
+    public boolean contains(int sequence) {
+        int low  = 0;
+        int high = rangeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (sequence < getStart(mid)) {
+                high = mid - 1;
+            } else if (sequence >= getEnd(mid)) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < rangeCount; i++) {
+            for (int sequence = getStart(i); sequence < getEnd(i); sequence++) {
+                action.accept(sequence);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < rangeCount; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(getStart(i)).append("..").append(getEnd(i) - 1);
+        }
+        return text.append(']').toString();
+    }
+
+    // Номера добавляются по возрастанию, соседние склеиваются в один диапазон
+    public static final class Builder {
+
+        private int[] bounds = new int[16];
+        private int   rangeCount;
+
+        private Builder() {}
+
+        public Builder add(int sequence) {
+            return addRange(sequence, sequence + 1);
+        }
+
+        public Builder addRange(int start, int end) {
+            if (start >= end) {
+                return this;
+            }
+
+            if (rangeCount > 0) {
+                int lastEnd = bounds[rangeCount * 2 - 1];
+                if (start < lastEnd) {
+                    throw new IllegalArgumentException("Ranges must be added in ascending order");
+                }
+                if (start == lastEnd) {
+                    bounds[rangeCount * 2 - 1] = end;
+                    return this;
+                }
+            }
+
+            if (bounds.length < (rangeCount + 1) * 2) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[rangeCount * 2]     = start;
+            bounds[rangeCount * 2 + 1] = end;
+            rangeCount++;
+            return this;
+        }
+
+        public SequenceRanges build() {
+            if (rangeCount == 0) {
+                return EMPTY;
+            }
+            return new SequenceRanges(Arrays.copyOf(bounds, rangeCount * 2), rangeCount);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.receiver;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.SequenceRanges;
+
+// Оценки по прибытию чанков одной передачи, как в TCP: сглаженный интервал между чанками
+// и RTT повторного запроса (запрос - приход запрошенного чанка) со средним отклонением
+public class ArrivalTracker {
+
+    private static final long MAX_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // До первого замера RTT запросы идут с прежней частотой раз в секунду
+    private static final long INITIAL_RTO_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final long MIN_GAP_AGE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long MAX_GAP_AGE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    // История наибольшего номера: не чаще одной записи за шаг
+    private static final int  HISTORY_SIZE       = 64;
+    private static final long HISTORY_STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final int NO_PROBE = -1;
+
+    // Нижняя граница интервалов обратной связи: тик таймера, чаще которого они не срабатывают
+    private final long minIntervalNanos;
+
+    private double meanInterArrival;
+    private double devInterArrival;
+    private long   lastArrival;
+
+    private double  smoothedRtt;
+    private double  rttVariance;
+    private boolean hasRtt;
+
+    // Чанк из последнего запроса, по приходу которого замеряется RTT.
+    // Пробой становится только чанк, ни разу не запрошенный раньше
+    private int          probeSequence = NO_PROBE;
+    private long         probeSentAt;
+    private final BitSet nackedChunks  = new BitSet();
+
+    private int          highestSequence = -1;
+    private final long[] historyTime     = new long[HISTORY_SIZE];
+    private final int[]  historyHighest  = new int[HISTORY_SIZE];
+    private int          historyCount;
+    private int          historyHead;
+
+    public ArrivalTracker(long tickNanos) {
+        this.minIntervalNanos = Math.min(MAX_INTERVAL_NANOS, Math.max(1, tickNanos));
+    }
+
+    public synchronized void onChunk(int sequence, long now) {
+        if (lastArrival != 0) {
+            double sample = now - lastArrival;
+            if (meanInterArrival == 0) {
+                meanInterArrival = sample;
+                devInterArrival  = sample / 2;
+            } else {
+                devInterArrival  = 0.75 * devInterArrival + 0.25 * Math.abs(sample - meanInterArrival);
+                meanInterArrival = 0.875 * meanInterArrival + 0.125 * sample;
+            }
+        }
+        lastArrival = now;
+
+        if (sequence == probeSequence) {
+            onRttSample(now - probeSentAt);
+            probeSequence = NO_PROBE;
+        }
+
+        if (sequence > highestSequence) {
+            highestSequence = sequence;
+        }
+        recordHighest(now);
+    }
+
+    // Пробой становится первый чанк, запрошенный впервые. Приход чанка, запрошенного
+    // повторно, нельзя сопоставить с конкретным запросом (алгоритм Карна): такие номера
+    // запоминаются и пробой больше не становятся, а текущая проба при повторе снимается
+    public synchronized void onNack(SequenceRanges missing, long now) {
+        int first = NO_PROBE;
+        for (int i = 0; i < missing.getRangeCount(); i++) {
+            int start = Math.max(0, missing.getStart(i));
+            int end   = missing.getEnd(i);
+            if (start >= end) {
+                continue;
+            }
+
+            if (probeSequence >= start && probeSequence < end) {
+                probeSequence = NO_PROBE;
+            }
+            if (first == NO_PROBE) {
+                int candidate = nackedChunks.nextClearBit(start);
+                if (candidate < end) {
+                    first = candidate;
+                }
+            }
+            nackedChunks.set(start, end);
+        }
+
+        if (first != NO_PROBE && probeSequence == NO_PROBE) {
+            probeSequence = first;
+            probeSentAt   = now;
+        }
+    }
+
+    // Интервал обратной связи: тайм-аут повтора srtt + 4 * rttvar в пределах [тик, 1 с]
+    public synchronized long getFeedbackIntervalNanos() {
+        long rto = hasRtt
+            ? (long) (smoothedRtt + 4 * rttVariance)
+            : INITIAL_RTO_NANOS;
+        return clamp(rto, minIntervalNanos, MAX_INTERVAL_NANOS);
+    }
+
+    // Частота тиков: подтверждение полученного не ждет тайм-аута повтора
+    public long getAckIntervalNanos() {
+        return minIntervalNanos;
+    }
+
+    // Пропуск считается потерей, если за ним чанки приходили дольше этого срока
+    public synchronized long getGapAgeNanos() {
+        long age = (long) (2 * meanInterArrival + 4 * devInterArrival);
+        return clamp(age, MIN_GAP_AGE_NANOS, MAX_GAP_AGE_NANOS);
+    }
+
+    // Граница оценки пропусков: наибольший номер, полученный не позже now - gapAge.
+    // Если чанки давно не приходят, в полете ничего нет и оцениваются все номера
+    public synchronized int getHorizon(long now) {
+        long cutoff = now - getGapAgeNanos();
+        if (lastArrival <= cutoff) {
+            return Integer.MAX_VALUE;
+        }
+
+        for (int i = 0; i < historyCount; i++) {
+            int index = Math.floorMod(historyHead - 1 - i, HISTORY_SIZE);
+            if (historyTime[index] <= cutoff) {
+                return historyHighest[index] + 1;
+            }
+        }
+        return 0;
+    }
+
+    private void onRttSample(long sample) {
+        if (!hasRtt) {
+            smoothedRtt = sample;
+            rttVariance = sample / 2.0;
+            hasRtt      = true;
+        } else {
+            rttVariance = 0.75 * rttVariance + 0.25 * Math.abs(sample - smoothedRtt);
+            smoothedRtt = 0.875 * smoothedRtt + 0.125 * sample;
+        }
+    }
+
+    private void recordHighest(long now) {
+        int last = Math.floorMod(historyHead - 1, HISTORY_SIZE);
+        // Внутри шага запись не обновляется: граница получается с запасом, а не с опережением
+        if (historyCount > 0 && now - historyTime[last] < HISTORY_STEP_NANOS) {
+            return;
+        }
+
+        historyTime[historyHead]    = now;
+        historyHighest[historyHead] = highestSequence;
+        historyHead  = (historyHead + 1) % HISTORY_SIZE;
+        historyCount = Math.min(HISTORY_SIZE, historyCount + 1);
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
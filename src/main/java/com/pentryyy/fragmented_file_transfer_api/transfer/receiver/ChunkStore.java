@@ -0,0 +1,76 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.receiver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HexFormat;
+
+// Хранилище чанков получателя по SHA-256: файл на чанк, каталоги по первому байту хэша.
+// Чанк пишется во временный файл и атомарно переносится, недописанный чанк не виден
+public class ChunkStore {
+
+    private final Path root;
+
+    public ChunkStore(Path root) {
+        this.root = root;
+    }
+
+    private Path pathOf(byte[] hash, int offset, int length) {
+        String hex = HexFormat.of().formatHex(hash, offset, offset + length);
+        return root.resolve(hex.substring(0, 2)).resolve(hex);
+    }
+
+    public boolean contains(byte[] hash, int offset, int length) {
+        return Files.isRegularFile(pathOf(hash, offset, length));
+    }
+
+    // null, если чанка нет или его длина не совпадает с ожидаемой
+    public ByteBuffer read(byte[] hash, int offset, int length, int expectedLength) throws IOException {
+        Path path = pathOf(hash, offset, length);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() != expectedLength) {
+                return null;
+            }
+
+            ByteBuffer data = ByteBuffer.allocate(expectedLength);
+            while (data.hasRemaining()) {
+                if (channel.read(data, data.position()) < 0) {
+                    return null;
+                }
+            }
+            return data.flip();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    public void put(byte[] hash, int offset, int length, ByteBuffer data) throws IOException {
+        Path target = pathOf(hash, offset, length);
+        if (Files.exists(target)) {
+            return;
+        }
+
+        Path directory = Files.createDirectories(target.getParent());
+        Path temp      = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer view = data.duplicate();
+                while (view.hasRemaining()) {
+                    channel.write(view);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+
+            // Тот же чанк параллельно сохранила другая передача
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
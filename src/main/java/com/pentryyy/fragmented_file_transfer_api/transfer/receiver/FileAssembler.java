@@ -1,161 +1,1163 @@
 package com.pentryyy.fragmented_file_transfer_api.transfer.receiver;
 
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashSet;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.pentryyy.fragmented_file_transfer_api.component.KafkaTransmissionChannel;
-import com.pentryyy.fragmented_file_transfer_api.exception.ChunkIsMissingException;
+import com.pentryyy.fragmented_file_transfer_api.exception.FileDigestMismatchException;
 import com.pentryyy.fragmented_file_transfer_api.exception.FileIncompleteException;
+import com.pentryyy.fragmented_file_transfer_api.exception.FileProcessingInterruptException;
+import com.pentryyy.fragmented_file_transfer_api.transfer.compression.ChunkCompression;
 import com.pentryyy.fragmented_file_transfer_api.transfer.core.Chunk;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.ChunkManifest;
 import com.pentryyy.fragmented_file_transfer_api.transfer.core.Feedback;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.HashedWheelTimer;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Integrity;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.SequenceRanges;
+import com.pentryyy.fragmented_file_transfer_api.transfer.sender.FileSplitter;
 
 public class FileAssembler {
 
+    private static final int META_SEQUENCE   = -1;
+    private static final int DIGEST_SEQUENCE = -2;
+
+    // Предел склейки соседних чанков пакета в одну запись
+    private static final int MAX_COALESCED_BYTES = 1024 * 1024;
+
+    // Метаданные идут в свой раздел, и данные других разделов часто приходят раньше.
+    // Сверх предела такие чанки отбрасываются и запрашиваются как дыры после метаданных
+    private static final long MAX_EARLY_BYTES = 4L * 1024 * 1024;
+
     private final String                   processingId;
     private final KafkaTransmissionChannel channel;
-    
-    private final Map<Integer, Chunk> receivedChunks = new ConcurrentHashMap<>();
-    private final AtomicBoolean       isAssembling   = new AtomicBoolean(false);
+    private final HashedWheelTimer         timer;
+    private final File                     partFile;
+    private final ChunkStore               chunkStore;
+
+    private final AtomicBoolean isAcknowledged = new AtomicBoolean(false);
+
+    // Завершается из receiveChunk с приходом последнего недостающего чанка
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private CompletableFuture<Void>       assembly;
+
+    // Чанк пишется в файл сборки по смещению сразу по приходу, в памяти остается
+    // только битовая карта полученных. Состояние сборки защищено блокировкой lock:
+    // под ней идут и файловые операции, поэтому не монитор - виртуальный поток
+    // на ожидании ReentrantLock не занимает поток-носитель
+    private final ReentrantLock       lock           = new ReentrantLock();
+    private final BitSet              receivedChunks = new BitSet();
+    private final BitSet              writingChunks  = new BitSet();
+    private final Map<Integer, Chunk> earlyChunks    = new HashMap<>();
+    private final MessageDigest       digest         = Integrity.newFileDigest();
+    private long                      earlyBytes;
+
+    // Интервалы прихода и RTT повторных запросов задают частоту и точность обратной связи
+    private final ArrivalTracker arrivals;
+
+    private FileChannel output;
+
+    // Водяной знак: первый неполученный чанк непрерывного префикса, он же граница хэширования SHA-256
+    private int digestCursor;
+
+    // Дыры ниже наибольшего полученного номера: начало -> конец (не включая).
+    // Хвост после highestSequence дырой не считается, пока отправитель не закончил поток
+    private final TreeMap<Integer, Integer> holes = new TreeMap<>();
+    private int                             highestSequence = -1;
+
+    // Читатели префикса, ждущие его продвижения за position
+    private record PrefixWaiter(long position, CompletableFuture<Long> future) {}
+    private final List<PrefixWaiter> prefixWaiters = new ArrayList<>();
 
-    private ScheduledExecutorService scheduler;
+    // Итоговый файл после переноса, под блокировкой lock
+    private Path assembledFile;
 
-    private volatile int totalChunks = -1;
+    // Передача с дедупликацией: раскладка чанков переменной длины приходит в манифесте,
+    // чанки из хранилища записываются на месте, по сети запрашиваются только недостающие
+    private final Map<Integer, ChunkManifest.Page> manifestPages     = new HashMap<>();
+    private int                                    manifestPageCount = -1;
+    private long[]                                 chunkOffsets;
+    private byte[]                                 chunkHashes;
+    private volatile boolean                       dedup;
+    private volatile SequenceRanges                wantedChunks;
+
+    // Очередной тик обратной связи на общем таймере. Запрос пропусков идет не чаще тайм-аута
+    // повтора, между ними - подтверждение непрерывного префикса. Тик и ожидание сборки
+    // защищены отдельной блокировкой scheduleLock
+    private final ReentrantLock               scheduleLock = new ReentrantLock();
+    private volatile HashedWheelTimer.Timeout feedbackTick;
+    private volatile long                     lastFeedbackAt;
+    private volatile int                      lastProgress;
+
+    // Время последнего полученного чанка: по нему менеджер отменяет брошенную сборку
+    private volatile long lastArrivalAt;
+
+    private volatile int     totalChunks = -1;
+    private volatile int     chunkSize;
+    private volatile long    fileSize;
+    private volatile int     receivedCount;
+    private volatile byte[]  expectedDigest;
+    private volatile boolean isComplete;
+    private volatile boolean isCorrupted;
+    private volatile boolean isDiscarded;
 
     private void sendFeedback() {
-        if (totalChunks == -1) {
+        if (chunkSize == 0) {
 
-            // Запрос метаданных
+            // Запрос метаданных, при дедупликации - недостающих страниц манифеста
             channel.sendFeedback(new Feedback(
-                processingId, 
-                -1, 
-                Collections.singleton(-1)
+                processingId,
+                -1,
+                dedup ? getMissingPages() : SequenceRanges.of(META_SEQUENCE)
             ));
             return;
         }
-        
-        // Проверка на наличие потерянных чанков
-        Set<Integer> missing = new HashSet<>();
-        for (int i = 0; i < totalChunks; i++) {
-            if (!receivedChunks.containsKey(i)) {
-                missing.add(i);
+
+        // Пропуски выше границы еще могут быть в пути и не запрашиваются
+        long now = System.nanoTime();
+        int  horizon;
+
+        // Запрашиваются только дыры, их перебор стоит O(дыр), а не O(totalChunks)
+        // Контрольная сумма запрашивается, только когда получен хвост данных: до этого
+        // отправитель ее еще не посчитал. При неизвестной длине конец потока не виден,
+        // и запрос повторяется на каждом тике - отправитель не считает его попыткой
+        SequenceRanges.Builder builder = SequenceRanges.builder();
+        if (expectedDigest == null) {
+            if (totalChunks == -1 || highestSequence + 1 >= totalChunks) {
+                builder.add(DIGEST_SEQUENCE);
             }
+        } else if (totalChunks == -1) {
+
+            // Потоковая передача: итоговые метаданные отправлены перед контрольной суммой
+            builder.add(META_SEQUENCE);
         }
-        
+        lock.lock();
+        try {
+
+            // Контрольная сумма идет последней и служит признаком конца потока:
+            // до нее неполученный хвост, скорее всего, еще не отправлен
+            int streamEnd = expectedDigest != null && totalChunks != -1 ? totalChunks : highestSequence + 1;
+            horizon = Math.min(streamEnd, arrivals.getHorizon(now));
+
+            for (Map.Entry<Integer, Integer> hole : holes.headMap(horizon).entrySet()) {
+                builder.addRange(hole.getKey(), Math.min(hole.getValue(), horizon));
+            }
+            builder.addRange(highestSequence + 1, horizon);
+        } finally {
+            lock.unlock();
+        }
+        SequenceRanges missing = builder.build();
+
         if (!missing.isEmpty()) {
-            System.out.println("Sending feedback (id " + this.processingId + "). Missing chunks: " + missing.size());
-            channel.sendFeedback(new Feedback(processingId, totalChunks, missing));
+            System.out.println("Sending feedback (id " + this.processingId + "). Missing chunks: " + missing.size() + " in " + missing.getRangeCount() + " ranges");
+            channel.sendFeedback(new Feedback(processingId, totalChunks, missing, horizon, wantedChunks));
+            arrivals.onNack(missing, now);
+        } else if (totalChunks == -1 || horizon < totalChunks) {
+
+            // Потерь нет, но передача идет: подтверждаем полученное до границы
+            channel.sendFeedback(new Feedback(processingId, totalChunks, missing, horizon, wantedChunks));
         } else {
             System.out.println("Sending feedback (id " + this.processingId + "). Chunks delivered");
         }
     }
 
+    // Подтверждает чанки до первой дыры без списка пропущенных: отправитель освобождает
+    // окно, ничего не отправляя повторно
+    private void sendProgress() {
+        if (chunkSize == 0) {
+            return;
+        }
+
+        int prefix;
+        lock.lock();
+        try {
+            prefix = holes.isEmpty() ? highestSequence + 1 : holes.firstKey();
+        } finally {
+            lock.unlock();
+        }
+
+        // Полный префикс подтверждает только обычная обратная связь: без контрольной суммы
+        // отправитель счел бы передачу завершенной
+        if (prefix <= lastProgress || (totalChunks != -1 && prefix >= totalChunks)) {
+            return;
+        }
+        lastProgress = prefix;
+        channel.sendFeedback(Feedback.progress(processingId, totalChunks, prefix, wantedChunks));
+    }
+
+    private SequenceRanges getMissingPages() {
+        SequenceRanges.Builder builder = SequenceRanges.builder();
+        lock.lock();
+        try {
+            if (manifestPageCount < 0) {
+                builder.add(ChunkManifest.FIRST_PAGE_SEQUENCE);
+            }
+
+            // Номера страниц убывают, поэтому обход с последней
+            for (int page = manifestPageCount - 1; page >= 0; page--) {
+                if (!manifestPages.containsKey(page)) {
+                    builder.add(ChunkManifest.toPageSequence(page));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return builder.build();
+    }
+
     private boolean isFileComplete() {
-        return totalChunks > 0 && receivedChunks.size() >= totalChunks;
+        return isComplete || isCorrupted || isDiscarded;
     }
 
-    private void startFeedbackScheduler() {
-        if (scheduler == null || scheduler.isShutdown()) {
-            scheduler = Executors.newSingleThreadScheduledExecutor();
+    private void sendAcknowledgement() {
+        if (isAcknowledged.compareAndSet(false, true)) {
+            channel.sendFeedback(new Feedback(
+                processingId,
+                totalChunks,
+                SequenceRanges.empty()
+            ));
         }
+    }
+
+    // Тик ставится с приходом чанков и перепланируется, только пока есть что запрашивать:
+    // передача без дыр между приходами чанков таймер не занимает. Завершенной сборке
+    // тик нужен один раз - подтвердить доставку
+    private void scheduleFeedback() {
+        scheduleLock.lock();
+        try {
+            if (feedbackTick != null || isCorrupted || isDiscarded || (isComplete && isAcknowledged.get())) {
+                return;
+            }
+            feedbackTick = timer.schedule(
+                this::onFeedbackTick,
+                arrivals.getAckIntervalNanos(),
+                TimeUnit.NANOSECONDS
+            );
+        } finally {
+            scheduleLock.unlock();
+        }
+    }
 
-        // Периодически отправляем запросы на недостающие чанки
-        scheduler.scheduleAtFixedRate(() -> {
-            if (!isFileComplete()) {
+    // Выполняется на виртуальном потоке исполнителя таймера: блокировка сборщика
+    // и отправка в Kafka не задерживают тики других сборщиков
+    private void onFeedbackTick() {
+
+        // Тик снимается до отправки: чанк, пришедший во время нее, поставит следующий
+        scheduleLock.lock();
+        try {
+            feedbackTick = null;
+        } finally {
+            scheduleLock.unlock();
+        }
+
+        if (!isFileComplete()) {
+            long now = System.nanoTime();
+            if (now - lastFeedbackAt >= arrivals.getFeedbackIntervalNanos()) {
+                lastFeedbackAt = now;
                 sendFeedback();
+            } else {
+                sendProgress();
+            }
+
+            if (hasOutstandingRequest()) {
+                scheduleFeedback();
+            }
+        } else if (isComplete) {
+
+            // Все получено: подтверждаем доставку, тик больше не планируется
+            sendAcknowledgement();
+        }
+    }
+
+    // То же, что запрашивает sendFeedback: метаданные или страницы манифеста, дыры,
+    // контрольная сумма после хвоста, хвост после контрольной суммы, конец потока
+    private boolean hasOutstandingRequest() {
+        if (chunkSize == 0) {
+            return true;
+        }
+
+        lock.lock();
+        try {
+            if (!holes.isEmpty()) {
+                return true;
             }
-        }, 0, 1, TimeUnit.SECONDS);
+            return expectedDigest == null
+                ? totalChunks == -1 || highestSequence + 1 >= totalChunks
+                : totalChunks == -1 || highestSequence + 1 < totalChunks;
+        } finally {
+            lock.unlock();
+        }
     }
 
     private void stopFeedbackScheduler() {
-        if (scheduler != null && !scheduler.isShutdown()) {
-            scheduler.shutdownNow();
+        scheduleLock.lock();
+        try {
+            HashedWheelTimer.Timeout current = feedbackTick;
+            if (current != null) {
+                current.cancel();
+                feedbackTick = null;
+            }
+        } finally {
+            scheduleLock.unlock();
+        }
+    }
+
+    // Вызывается вне блокировки lock, чтобы продолжения сборки не задерживали прием чанков
+    private void signalCompletion() {
+        if (isComplete) {
+            completion.complete(null);
+        } else if (isCorrupted) {
+            completion.completeExceptionally(new FileDigestMismatchException());
+        }
+    }
+
+    private void moveToOutput(String outputPath) {
+        try {
+
+            // Перенос под блокировкой: читатель префикса открывает файл по актуальному пути
+            lock.lock();
             try {
-                if (!scheduler.awaitTermination(3, TimeUnit.SECONDS)) {
-                    System.err.println("Scheduler did not terminate");
+                assembledFile = Files.move(partFile.toPath(), Paths.get(outputPath), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+        System.out.println("File assembled successfully: " + outputPath);
+
+        // Подтверждаем отправителю полную доставку
+        sendAcknowledgement();
+    }
+
+    // Метаданные "totalChunks:chunkSize:fileSize": файл сборки сразу получает полный размер.
+    // При потоковой загрузке длина заранее неизвестна: первыми приходят метаданные
+    // "-1:chunkSize:-1", по которым чанки уже пишутся по смещению, итоговые - в конце потока
+    // При дедупликации к метаданным добавляется признак раскладки по содержимому: "...:CDC"
+    private void receiveMeta(Chunk chunk) throws IOException {
+        String[] meta = new String(chunk.toByteArray(), StandardCharsets.UTF_8).split(":");
+        if (meta.length != 3 && !(meta.length == 4 && meta[3].equals(FileSplitter.DEDUP_LAYOUT))) {
+            throw new NumberFormatException("Expected totalChunks:chunkSize:fileSize");
+        }
+
+        int  total = Integer.parseInt(meta[0]);
+        int  size  = Integer.parseInt(meta[1]);
+        long bytes = Long.parseLong(meta[2]);
+
+        if (meta.length == 4) {
+            receiveDedupMeta(total, bytes);
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (totalChunks != -1) {
+                return;
+            }
+
+            if (chunkSize == 0) {
+                Files.createDirectories(partFile.getAbsoluteFile().getParentFile().toPath());
+                try (RandomAccessFile file = new RandomAccessFile(partFile, "rw")) {
+                    file.setLength(Math.max(0, bytes));
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+                output = FileChannel.open(
+                    partFile.toPath(),
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE
+                );
+                chunkSize = size;
+            } else if (size != chunkSize) {
+                System.err.println("Ignored metadata (id " + this.processingId + "): chunk size changed from " + chunkSize + " to " + size);
+                return;
+            }
+
+            if (total >= 0) {
+                fileSize    = bytes;
+                totalChunks = total;
+                System.out.println("Received metadata (id " + this.processingId + "). Total chunks: " + totalChunks);
+            } else {
+                System.out.println("Received stream metadata (id " + this.processingId + "). Chunk size: " + chunkSize);
+            }
+
+            // Чанки, пришедшие раньше метаданных, записываются на свои места
+            for (Chunk early : earlyChunks.values()) {
+                writeChunk(early);
+            }
+            earlyChunks.clear();
+            earlyBytes = 0;
+
+            tryComplete();
+            notifyPrefixWaiters();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void receiveDedupMeta(int total, long bytes) throws IOException {
+        boolean ready;
+        lock.lock();
+        try {
+            if (totalChunks != -1 || total < 0 || bytes < 0) {
+                return;
+            }
+
+            Files.createDirectories(partFile.getAbsoluteFile().getParentFile().toPath());
+            try (RandomAccessFile file = new RandomAccessFile(partFile, "rw")) {
+                file.setLength(bytes);
+            }
+            output = FileChannel.open(
+                partFile.toPath(),
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+            );
+
+            dedup       = true;
+            fileSize    = bytes;
+            totalChunks = total;
+            System.out.println("Received deduplication metadata (id " + this.processingId + "). Total chunks: " + totalChunks);
+
+            ready = buildLayout();
+        } finally {
+            lock.unlock();
+        }
+
+        if (ready) {
+            resolveFromStore();
+        }
+    }
+
+    private void receiveManifestPage(Chunk chunk) throws IOException {
+        ChunkManifest.Page page;
+        try {
+            page = ChunkManifest.decodePage(chunk.toByteArray());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid manifest page (id " + this.processingId + "): " + e.getMessage());
+            return;
+        }
+
+        boolean ready;
+        lock.lock();
+        try {
+            if (chunkOffsets != null) {
+                return;
+            }
+            manifestPageCount = page.pageCount();
+            manifestPages.putIfAbsent(ChunkManifest.toPageIndex(chunk.getSequenceNumber()), page);
+
+            ready = buildLayout();
+        } finally {
+            lock.unlock();
+        }
+
+        if (ready) {
+            resolveFromStore();
+        }
+    }
+
+    // Вызывается под блокировкой lock: раскладка строится, когда есть метаданные и все страницы.
+    // Возвращает true, если она построена этим вызовом
+    private boolean buildLayout() throws IOException {
+        if (!dedup || chunkOffsets != null || manifestPageCount < 0 || manifestPages.size() < manifestPageCount) {
+            return false;
+        }
+
+        long[] offsets = new long[totalChunks + 1];
+        byte[] hashes  = new byte[totalChunks * ChunkManifest.HASH_LENGTH];
+        int    longest = 0;
+        int    count   = 0;
+        for (int index = 0; index < manifestPageCount; index++) {
+            ChunkManifest.Page page = manifestPages.get(index);
+            if (page == null || page.first() != count || count + page.lengths().length > totalChunks) {
+                return markLayoutCorrupted("manifest page #" + index + " does not continue chunk #" + count);
+            }
+
+            for (int i = 0; i < page.lengths().length; i++, count++) {
+                offsets[count + 1] = offsets[count] + page.lengths()[i];
+                longest            = Math.max(longest, page.lengths()[i]);
+            }
+            System.arraycopy(page.hashes(), 0, hashes, page.first() * ChunkManifest.HASH_LENGTH, page.hashes().length);
+        }
+
+        if (count != totalChunks || offsets[count] != fileSize) {
+            return markLayoutCorrupted("manifest describes " + count + " chunks and " + offsets[count] + " bytes");
+        }
+
+        chunkOffsets = offsets;
+        chunkHashes  = hashes;
+        chunkSize    = Math.max(1, longest);
+        manifestPages.clear();
+
+        tryComplete();
+        notifyPrefixWaiters();
+        return true;
+    }
+
+    // Вызывается под блокировкой lock
+    private boolean markLayoutCorrupted(String reason) throws IOException {
+        System.err.println("Invalid manifest (id " + this.processingId + "): " + reason);
+        output.close();
+        Files.deleteIfExists(partFile.toPath());
+        isCorrupted = true;
+        failPrefixWaiters(new FileDigestMismatchException());
+        return false;
+    }
+
+    // Наличие проверяется до копирования: список недостающих уходит отправителю сразу,
+    // и сетевые чанки идут параллельно с записью найденных в хранилище
+    private void resolveFromStore() {
+        BitSet                 stored = new BitSet(totalChunks);
+        SequenceRanges.Builder wanted = SequenceRanges.builder();
+        for (int sequence = 0; sequence < totalChunks; sequence++) {
+            if (chunkStore != null && chunkStore.contains(chunkHashes, sequence * ChunkManifest.HASH_LENGTH, ChunkManifest.HASH_LENGTH)) {
+                stored.set(sequence);
+            } else {
+                wanted.add(sequence);
+            }
+        }
+        wantedChunks = wanted.build();
+        System.out.println("Resolved manifest (id " + this.processingId + "): " + stored.cardinality() + " of " + totalChunks + " chunks found in store");
+
+        sendFeedback();
+
+        List<Chunk> batch = new ArrayList<>();
+        long        bytes = 0;
+        for (int sequence = stored.nextSetBit(0); sequence >= 0; sequence = stored.nextSetBit(sequence + 1)) {
+            ByteBuffer data;
+            try {
+                data = chunkStore.read(chunkHashes, sequence * ChunkManifest.HASH_LENGTH, ChunkManifest.HASH_LENGTH, lengthOf(sequence));
+            } catch (IOException e) {
+                data = null;
+            }
+
+            // Чанк пропал из хранилища: он останется дырой и будет запрошен как потерянный
+            if (data == null) {
+                System.err.println("Stored chunk #" + sequence + " (id " + this.processingId + ") is not readable");
+                continue;
+            }
+
+            batch.add(new Chunk(sequence, data, processingId));
+            bytes += data.remaining();
+            if (bytes >= MAX_COALESCED_BYTES) {
+                writeChunks(batch, false);
+                batch = new ArrayList<>();
+                bytes = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeChunks(batch, false);
+        }
+    }
+
+    // Смещение чанка: seq * chunkSize или по раскладке манифеста
+    private long positionOf(int sequence) {
+        return chunkOffsets != null ? chunkOffsets[sequence] : (long) sequence * chunkSize;
+    }
+
+    // Длина чанка, когда размер файла известен
+    private int lengthOf(int sequence) {
+        return chunkOffsets != null
+            ? (int) (chunkOffsets[sequence + 1] - chunkOffsets[sequence])
+            : (int) Math.min(chunkSize, fileSize - positionOf(sequence));
+    }
+
+    // Вызывается под блокировкой lock
+    private void writeChunk(Chunk chunk) throws IOException {
+        if (claimChunk(chunk)) {
+            writeAt(chunk);
+            commitChunk(chunk);
+        }
+    }
+
+    // Вызывается под блокировкой lock: чанк закрепляется за одним писателем
+    private boolean claimChunk(Chunk chunk) {
+        int sequence = chunk.getSequenceNumber();
+        if (isFileComplete() || (totalChunks != -1 && sequence >= totalChunks) || receivedChunks.get(sequence) || writingChunks.get(sequence)) {
+            return false;
+        }
+
+        // Пока длина потока неизвестна, короче чанка может быть только последний
+        int     length = chunk.getData().remaining();
+        boolean valid  = totalChunks != -1
+            ? length == lengthOf(sequence)
+            : length > 0 && length <= chunkSize;
+        if (!valid) {
+            System.err.println("Dropped chunk #" + sequence + " (id " + this.processingId + "): unexpected length " + length);
+            return false;
+        }
+
+        writingChunks.set(sequence);
+        return true;
+    }
+
+    // Позиционная запись без блокировки: чанки разных разделов пишутся параллельно
+    private void writeAt(Chunk chunk) throws IOException {
+        long       position = positionOf(chunk.getSequenceNumber());
+        ByteBuffer data     = chunk.getData().duplicate();
+        try {
+            while (data.hasRemaining()) {
+                position += output.write(data, position);
             }
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                writingChunks.clear(chunk.getSequenceNumber());
+            } finally {
+                lock.unlock();
+            }
+            throw e;
         }
     }
 
-    private void waitForCompletion(long timeout, TimeUnit unit) throws InterruptedException {
-        long endTime = System.currentTimeMillis() + unit.toMillis(timeout);
-        
-        // Проверяем каждую секунду
-        while (!isFileComplete() && System.currentTimeMillis() < endTime) {
-            Thread.sleep(1000);
+    // Вызывается под блокировкой lock
+    private void commitChunk(Chunk chunk) throws IOException {
+        int sequence = chunk.getSequenceNumber();
+
+        writingChunks.clear(sequence);
+        receivedChunks.set(sequence);
+        receivedCount++;
+        fillHole(sequence);
+
+        // Чанк продолжает хэшированный префикс - учитываем его из памяти,
+        // идущие следом ранее пришедшие чанки дочитываем из файла
+        if (sequence == digestCursor) {
+            digest.update(chunk.getData().duplicate());
+            digestCursor++;
+            advanceDigest();
         }
     }
 
-    private void writeFile(String outputPath) throws IOException {
-        try (FileOutputStream fos = new FileOutputStream(outputPath)) {
-            for (int i = 0; i < totalChunks; i++) {
-                Chunk chunk = receivedChunks.get(i);
-                if (chunk == null) {
-                    throw new ChunkIsMissingException(i);
+    // Вызывается под блокировкой lock
+    private void fillHole(int sequence) {
+        if (sequence > highestSequence) {
+            if (sequence > highestSequence + 1) {
+                holes.put(highestSequence + 1, sequence);
+            }
+            highestSequence = sequence;
+            return;
+        }
+
+        Map.Entry<Integer, Integer> hole = holes.floorEntry(sequence);
+        if (hole == null || sequence >= hole.getValue()) {
+            return;
+        }
+
+        holes.remove(hole.getKey());
+        if (hole.getKey() < sequence) {
+            holes.put(hole.getKey(), sequence);
+        }
+        if (sequence + 1 < hole.getValue()) {
+            holes.put(sequence + 1, hole.getValue());
+        }
+    }
+
+    // Вызывается под блокировкой lock
+    private void advanceDigest() throws IOException {
+        ByteBuffer buffer = null;
+        while ((totalChunks == -1 || digestCursor < totalChunks) && receivedChunks.get(digestCursor)) {
+
+            // Без итоговых метаданных конец последнего чанка - конец записанного файла
+            long position = positionOf(digestCursor);
+            int  length   = totalChunks != -1
+                ? lengthOf(digestCursor)
+                : (int) Math.min(chunkSize, output.size() - position);
+
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate(chunkSize);
+            }
+            buffer.clear().limit(length);
+            while (buffer.hasRemaining()) {
+                if (output.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of assembly file at chunk #" + digestCursor);
                 }
-                fos.write(chunk.getData());
             }
+            buffer.flip();
+            digest.update(buffer);
+            digestCursor++;
         }
-        System.out.println("File assembled successfully: " + outputPath);
     }
 
-    public FileAssembler(String processingId, KafkaTransmissionChannel channel) {
+    // Вызывается под блокировкой lock: сборка завершается с приходом последнего чанка
+    private void tryComplete() throws IOException {
+        if (isFileComplete() || totalChunks == -1 || expectedDigest == null || receivedCount < totalChunks) {
+            return;
+        }
+
+        output.close();
+        if (!MessageDigest.isEqual(digest.digest(), expectedDigest)) {
+            Files.deleteIfExists(partFile.toPath());
+            isCorrupted = true;
+            System.err.println("File digest mismatch (id " + this.processingId + ")");
+            return;
+        }
+        isComplete = true;
+    }
+
+    // Вызывается под блокировкой lock. Префикс - чанки до водяного знака digestCursor.
+    // Последний чанк отдается только после сверки SHA-256: читатель не получит файл
+    // целиком, если он поврежден
+    private long getPrefixLength() throws IOException {
+        if (chunkSize == 0) {
+            return 0;
+        }
+        if (isComplete) {
+            return fileSize;
+        }
+
+        if (totalChunks != -1) {
+            return positionOf(Math.min(digestCursor, Math.max(0, totalChunks - 1)));
+        }
+
+        // Длина потока неизвестна: короче чанка может быть только последний записанный
+        return Math.min(positionOf(digestCursor), output.size());
+    }
+
+    // Вызывается под блокировкой lock
+    private void notifyPrefixWaiters() throws IOException {
+        if (prefixWaiters.isEmpty()) {
+            return;
+        }
+        if (isCorrupted) {
+            failPrefixWaiters(new FileDigestMismatchException());
+            return;
+        }
+
+        long prefix = getPrefixLength();
+        prefixWaiters.removeIf(waiter -> {
+            if (prefix <= waiter.position() && !isComplete) {
+                return false;
+            }
+            waiter.future().complete(prefix);
+            return true;
+        });
+    }
+
+    // Вызывается под блокировкой lock
+    private void failPrefixWaiters(Throwable error) {
+        for (PrefixWaiter waiter : prefixWaiters) {
+            waiter.future().completeExceptionally(error);
+        }
+        prefixWaiters.clear();
+    }
+
+    public FileAssembler(
+        String processingId,
+        KafkaTransmissionChannel channel,
+        HashedWheelTimer timer,
+        File partFile
+    ) {
+        this(processingId, channel, timer, partFile, null);
+    }
+
+    // Без хранилища передача с дедупликацией запрашивает все чанки
+    public FileAssembler(
+        String processingId,
+        KafkaTransmissionChannel channel,
+        HashedWheelTimer timer,
+        File partFile,
+        ChunkStore chunkStore
+    ) {
         this.processingId = processingId;
         this.channel      = channel;
+        this.timer        = timer;
+        this.partFile     = partFile;
+        this.chunkStore   = chunkStore;
+        this.arrivals     = new ArrivalTracker(timer.getTickNanos());
+
+        lastFeedbackAt = System.nanoTime();
+        lastArrivalAt  = lastFeedbackAt;
     }
 
     public void receiveChunk(Chunk chunk) {
-        if (!chunk.getProcessingId().equals(processingId)) 
+        receiveChunks(List.of(chunk));
+    }
+
+    // Пакет из одного опроса: учет полученных обновляется за один захват блокировки,
+    // соседние чанки пишутся в файл одной позиционной записью
+    public void receiveChunks(List<Chunk> chunks) {
+        List<Chunk> data = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            chunk = verify(chunk);
+            if (chunk == null) {
+                continue;
+            }
+            lastArrivalAt = System.nanoTime();
+
+            if (chunk.getSequenceNumber() >= 0) {
+                arrivals.onChunk(chunk.getSequenceNumber(), System.nanoTime());
+                data.add(chunk);
+            } else {
+                receiveControl(chunk);
+            }
+        }
+
+        if (!data.isEmpty()) {
+            writeChunks(data, true);
+        }
+
+        if (feedbackTick == null) {
+            scheduleFeedback();
+        }
+    }
+
+    // Запись пачки чанков: из сети (received) или из хранилища при дедупликации
+    private void writeChunks(List<Chunk> data, boolean received) {
+        List<Chunk> claimed = new ArrayList<>(data.size());
+        lock.lock();
+        try {
+            for (Chunk chunk : data) {
+                if (chunkSize == 0) {
+
+                    // Без метаданных смещение неизвестно: чанк ждет в памяти в пределах MAX_EARLY_BYTES.
+                    // При дедупликации раскладка придет до запроса чанков, ранние отбрасываются
+                    int length = chunk.getData().remaining();
+                    if (!dedup
+                        && earlyBytes + length <= MAX_EARLY_BYTES
+                        && earlyChunks.putIfAbsent(chunk.getSequenceNumber(), chunk) == null
+                    ) {
+                        earlyBytes += length;
+                    }
+                } else if (claimChunk(chunk)) {
+                    claimed.add(chunk);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Чанк из сети сверяется с хэшем манифеста: по нему он попадет в хранилище
+        if (dedup && received) {
+            claimed.removeIf(chunk -> !matchesManifest(chunk));
+        }
+
+        if (claimed.isEmpty()) {
             return;
-        
-        if (chunk.getSequenceNumber() == -1) {
+        }
+        claimed.sort(Comparator.comparingInt(Chunk::getSequenceNumber));
 
-            // Получаем мета чанк
+        // Разделы топика читаются параллельно, под блокировкой только учет полученных
+        List<Chunk> written = new ArrayList<>(claimed.size());
+        int         from    = 0;
+        while (from < claimed.size()) {
+            int to = runEnd(claimed, from);
             try {
-                totalChunks = Integer.parseInt(new String(chunk.getData()));
-                System.out.println("Received metadata (id " + this.processingId + "). Total chunks: " + totalChunks);
-            } catch (NumberFormatException e) {
-                System.err.println("Invalid metadata (id " + this.processingId + ") format: " + new String(chunk.getData()));
+                writeRun(claimed.subList(from, to));
+                written.addAll(claimed.subList(from, to));
+            } catch (IOException e) {
+                System.err.println("Failed to write chunks #" + claimed.get(from).getSequenceNumber() + ".." + claimed.get(to - 1).getSequenceNumber() + " (id " + this.processingId + "): " + e.getMessage());
+            }
+            from = to;
+        }
+
+        try {
+            lock.lock();
+            try {
+                for (Chunk chunk : written) {
+                    commitChunk(chunk);
+                }
+                tryComplete();
+                notifyPrefixWaiters();
+            } finally {
+                lock.unlock();
             }
+        } catch (IOException e) {
+            System.err.println("Failed to commit chunks (id " + this.processingId + "): " + e.getMessage());
+        }
+        signalCompletion();
+
+        if (dedup && received && chunkStore != null) {
+            storeChunks(written);
+        }
+    }
+
+    private boolean matchesManifest(Chunk chunk) {
+        int           sequence = chunk.getSequenceNumber();
+        MessageDigest sha      = Integrity.newFileDigest();
+        sha.update(chunk.getData().duplicate());
+
+        if (Arrays.equals(
+            sha.digest(), 0, ChunkManifest.HASH_LENGTH,
+            chunkHashes, sequence * ChunkManifest.HASH_LENGTH, (sequence + 1) * ChunkManifest.HASH_LENGTH
+        )) {
+            return true;
+        }
+
+        System.err.println("Dropped chunk #" + sequence + " (id " + this.processingId + "): content does not match manifest");
+        lock.lock();
+        try {
+            writingChunks.clear(sequence);
+        } finally {
+            lock.unlock();
+        }
+        return false;
+    }
+
+    // Ошибка записи в хранилище не влияет на передачу: чанк просто не переиспользуется
+    private void storeChunks(List<Chunk> chunks) {
+        for (Chunk chunk : chunks) {
+            int offset = chunk.getSequenceNumber() * ChunkManifest.HASH_LENGTH;
+            try {
+                chunkStore.put(chunkHashes, offset, ChunkManifest.HASH_LENGTH, chunk.getData().duplicate());
+            } catch (IOException e) {
+                System.err.println("Failed to store chunk #" + chunk.getSequenceNumber() + " (id " + this.processingId + "): " + e.getMessage());
+            }
+        }
+    }
+
+    // Проверка CRC32C по переданным байтам и распаковка: поврежденный чанк отбрасывается
+    // и будет запрошен повторно. Исходная длина ограничена размером чанка, а до метаданных -
+    // лимитом буфера ранних чанков
+    private Chunk verify(Chunk chunk) {
+        if (!chunk.getProcessingId().equals(processingId)) {
+            return null;
+        }
+
+        if (!Integrity.isIntact(chunk)) {
+            System.err.println("Dropped chunk #" + chunk.getSequenceNumber() + " (id " + this.processingId + "): checksum mismatch");
+            return null;
+        }
+
+        int maxLength = chunkSize > 0 ? chunkSize : (int) MAX_EARLY_BYTES;
+        try {
+            return ChunkCompression.decompress(chunk, maxLength);
+        } catch (IllegalStateException e) {
+            System.err.println("Dropped chunk #" + chunk.getSequenceNumber() + " (id " + this.processingId + "): " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void receiveControl(Chunk chunk) {
+        try {
+            if (chunk.getSequenceNumber() == DIGEST_SEQUENCE) {
+                lock.lock();
+                try {
+                    if (expectedDigest == null) {
+                        expectedDigest = chunk.toByteArray();
+                        tryComplete();
+                        notifyPrefixWaiters();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            } else if (chunk.getSequenceNumber() == META_SEQUENCE) {
+
+                // Получаем мета чанк
+                try {
+                    receiveMeta(chunk);
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid metadata (id " + this.processingId + ") format: " + new String(chunk.toByteArray()));
+                }
+            } else if (ChunkManifest.isPageSequence(chunk.getSequenceNumber())) {
+                receiveManifestPage(chunk);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write chunk #" + chunk.getSequenceNumber() + " (id " + this.processingId + "): " + e.getMessage());
+        }
+        signalCompletion();
+    }
+
+    // Конец серии подряд идущих номеров, начиная с from, в пределах MAX_COALESCED_BYTES
+    private int runEnd(List<Chunk> claimed, int from) {
+        int  to    = from + 1;
+        long bytes = claimed.get(from).getData().remaining();
+        while (to < claimed.size()
+            && claimed.get(to).getSequenceNumber() == claimed.get(to - 1).getSequenceNumber() + 1
+            && bytes + claimed.get(to).getData().remaining() <= MAX_COALESCED_BYTES) {
+            bytes += claimed.get(to).getData().remaining();
+            to++;
+        }
+        return to;
+    }
+
+    private void writeRun(List<Chunk> run) throws IOException {
+        if (run.size() == 1) {
+            writeAt(run.get(0));
             return;
         }
-        
-        receivedChunks.put(chunk.getSequenceNumber(), chunk);
+
+        int size = 0;
+        for (Chunk chunk : run) {
+            size += chunk.getData().remaining();
+        }
+
+        // Мелкие соседние чанки склеиваются в один буфер: одна запись вместо нескольких
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Chunk chunk : run) {
+            buffer.put(chunk.getData().duplicate());
+        }
+        buffer.flip();
+
+        long position = positionOf(run.get(0).getSequenceNumber());
+        try {
+            while (buffer.hasRemaining()) {
+                position += output.write(buffer, position);
+            }
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                for (Chunk chunk : run) {
+                    writingChunks.clear(chunk.getSequenceNumber());
+                }
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
     }
 
-    public void assembleFile(String outputPath) throws IOException, InterruptedException {
-        
-        if (!isAssembling.compareAndSet(false, true)) {
-            throw new IllegalStateException("Assembly is already in progress");
+    // Future завершается длиной непрерывного префикса, как только она превысит position,
+    // или длиной файла по окончании сборки. Чтение префикса идет параллельно с приемом
+    public CompletableFuture<Long> awaitPrefix(long position) {
+        lock.lock();
+        try {
+            if (isCorrupted) {
+                return CompletableFuture.failedFuture(new FileDigestMismatchException());
+            }
+
+            try {
+                long prefix = getPrefixLength();
+                if (prefix > position || isComplete) {
+                    return CompletableFuture.completedFuture(prefix);
+                }
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+
+            CompletableFuture<Long> future = new CompletableFuture<>();
+            prefixWaiters.add(new PrefixWaiter(position, future));
+            return future;
+        } finally {
+            lock.unlock();
         }
+    }
 
+    // Канал чтения префикса: файл сборки, после переноса - итоговый файл.
+    // Открытый канал продолжает читать тот же файл и после переноса
+    public FileChannel openPrefixChannel() throws IOException {
+        lock.lock();
         try {
-            // 1. Запускаем периодическую проверку готовности
-            startFeedbackScheduler();
-            
-            // 2. Ожидаем завершения сборки с таймаутом
-            waitForCompletion(5, TimeUnit.MINUTES);
-            
-            // 3. Проверяем статус и собираем файл
-            if (isFileComplete()) {
-                writeFile(outputPath);
-            } else {
-                throw new FileIncompleteException(totalChunks - receivedChunks.size());
+            return FileChannel.open(
+                assembledFile != null ? assembledFile : partFile.toPath(),
+                StandardOpenOption.READ
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Размер файла, -1 пока он неизвестен
+    public long getFileSize() {
+        return totalChunks != -1 ? fileSize : -1;
+    }
+
+    // Сборка не завершена, и чанков не было дольше timeoutNanos
+    public boolean isIdle(long now, long timeoutNanos) {
+        return !isFileComplete() && now - lastArrivalAt >= timeoutNanos;
+    }
+
+    // Задача удалена до конца сборки: опрос останавливается, файл сборки закрывается и удаляется,
+    // ожидающие сборки и префикса получают ошибку прерывания
+    public void discard() {
+        stopFeedbackScheduler();
+        lock.lock();
+        try {
+            if (isComplete) {
+                return;
             }
+            isDiscarded = true;
+
+            try {
+                if (output != null) {
+                    output.close();
+                }
+                Files.deleteIfExists(partFile.toPath());
+            } catch (IOException e) {
+                System.err.println("Failed to discard assembly (id " + this.processingId + "): " + e.getMessage());
+            }
+            failPrefixWaiters(new FileProcessingInterruptException());
+        } finally {
+            lock.unlock();
+        }
+        completion.completeExceptionally(new FileProcessingInterruptException());
+    }
+
+    // Ожидание без блокировки потока: повторный вызов во время сборки получает тот же future
+    public CompletableFuture<Void> assembleFile(String outputPath) {
+        scheduleLock.lock();
+        try {
+            if (assembly != null) {
+                return assembly;
+            }
+
+            // 1. Запускаем периодическую проверку готовности
+            scheduleFeedback();
+
+            // 2. Ожидаем сигнала о завершении сборки с таймаутом, 3. переносим собранный файл на место
+            assembly = completion
+                .copy()
+                .orTimeout(5, TimeUnit.MINUTES)
+                .thenRunAsync(() -> moveToOutput(outputPath))
+                .handleAsync((result, error) -> {
+                    if (error == null) {
+                        return result;
+                    }
+
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause()
+                        : error;
+                    if (cause instanceof TimeoutException) {
+                        cause = new FileIncompleteException(totalChunks - receivedCount);
+                    }
+
+                    // После неудачи опрос останавливается, повторный вызов начнет ожидание заново
+                    stopFeedbackScheduler();
+                    scheduleLock.lock();
+                    try {
+                        assembly = null;
+                    } finally {
+                        scheduleLock.unlock();
+                    }
+
+                    // Читатели префикса получают ту же ошибку
+                    lock.lock();
+                    try {
+                        failPrefixWaiters(cause);
+                    } finally {
+                        lock.unlock();
+                    }
+
+                    if (cause instanceof FileIncompleteException incomplete) {
+                        throw incomplete;
+                    }
+                    throw cause instanceof CompletionException completionException
+                        ? completionException
+                        : new CompletionException(cause);
+                });
+            return assembly;
         } finally {
-            stopFeedbackScheduler();
-            isAssembling.set(false);
+            scheduleLock.unlock();
         }
     }
 }
@@ -0,0 +1,145 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.sender;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.ChunkManifest;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Integrity;
+
+// Разбиение по содержимому (FastCDC): граница ставится там, где скользящий Gear-хэш
+// последних 64 байт дает нули под маской. Правка в середине файла сдвигает только
+// соседние границы, остальные чанки совпадают с чанками прошлой загрузки
+public class ContentDefinedChunker {
+
+    // Таблица Gear фиксирована: одинаковое содержимое всегда режется одинаково
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x9E3779B97F4A7C15L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    // Нижняя граница среднего размера: манифест и раскладка держатся в памяти
+    public static final int MIN_AVERAGE_SIZE = 4 * 1024;
+    public static final int MAX_AVERAGE_SIZE = 4 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final int  averageSize;
+    private final int  minSize;
+    private final int  maxSize;
+    private final long strictMask;
+    private final long looseMask;
+
+    // Раскладка файла: смещения чанков (count + 1, последнее - размер файла) и их SHA-256 подряд
+    public record Layout(int count, long[] offsets, byte[] hashes, int maxLength) {}
+
+    public ContentDefinedChunker(int averageSize) {
+        int clamped = Math.max(MIN_AVERAGE_SIZE, Math.min(MAX_AVERAGE_SIZE, averageSize));
+        int bits    = 31 - Integer.numberOfLeadingZeros(clamped);
+
+        this.averageSize = 1 << bits;
+        this.minSize     = this.averageSize / 4;
+        this.maxSize     = this.averageSize * 8;
+
+        // Нормализация: до среднего размера граница ставится реже, после - чаще
+        this.strictMask = topBits(bits + 1);
+        this.looseMask  = topBits(bits - 1);
+    }
+
+    private static long topBits(int count) {
+        return -1L << (Long.SIZE - count);
+    }
+
+    public int getAverageSize() {
+        return averageSize;
+    }
+
+    // Один последовательный проход: границы, SHA-256 каждого чанка и всего файла
+    public Layout split(FileChannel source, MessageDigest fileDigest) throws IOException {
+        long[] offsets = new long[1024];
+        byte[] hashes  = new byte[1024 * ChunkManifest.HASH_LENGTH];
+        int    count   = 0;
+        int    longest = 0;
+
+        MessageDigest chunkDigest = Integrity.newFileDigest();
+        ByteBuffer    buffer      = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[]        bytes       = buffer.array();
+
+        long position   = 0;
+        long chunkStart = 0;
+        int  length     = 0;
+        long hash       = 0;
+        int  bytesRead;
+        while ((bytesRead = source.read(buffer.clear(), position)) > 0) {
+            fileDigest.update(bytes, 0, bytesRead);
+
+            int from = 0;
+            for (int i = 0; i < bytesRead; i++) {
+                length++;
+                if (length < minSize) {
+                    continue;
+                }
+
+                hash = (hash << 1) + GEAR[bytes[i] & 0xFF];
+                long mask = length < averageSize ? strictMask : looseMask;
+                if ((hash & mask) != 0 && length < maxSize) {
+                    continue;
+                }
+
+                chunkDigest.update(bytes, from, i + 1 - from);
+                from = i + 1;
+
+                if (count + 1 >= offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    hashes  = Arrays.copyOf(hashes, hashes.length * 2);
+                }
+                offsets[count] = chunkStart;
+                finish(chunkDigest, hashes, count);
+                count++;
+
+                longest    = Math.max(longest, length);
+                chunkStart = position + i + 1;
+                length     = 0;
+                hash       = 0;
+            }
+            chunkDigest.update(bytes, from, bytesRead - from);
+            position += bytesRead;
+        }
+
+        // Хвост короче минимального размера - последний чанк
+        if (length > 0) {
+            if (count + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length + 1);
+                hashes  = Arrays.copyOf(hashes, hashes.length + ChunkManifest.HASH_LENGTH);
+            }
+            offsets[count] = chunkStart;
+            finish(chunkDigest, hashes, count);
+            count++;
+            longest = Math.max(longest, length);
+        }
+        offsets[count] = position;
+
+        return new Layout(
+            count,
+            Arrays.copyOf(offsets, count + 1),
+            Arrays.copyOf(hashes, count * ChunkManifest.HASH_LENGTH),
+            longest
+        );
+    }
+
+    private void finish(MessageDigest chunkDigest, byte[] hashes, int index) {
+        try {
+            chunkDigest.digest(hashes, index * ChunkManifest.HASH_LENGTH, ChunkManifest.HASH_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
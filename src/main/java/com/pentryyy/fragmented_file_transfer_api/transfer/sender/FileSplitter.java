@@ -1,53 +1,368 @@
 package com.pentryyy.fragmented_file_transfer_api.transfer.sender;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.pentryyy.fragmented_file_transfer_api.component.KafkaTransmissionChannel;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.SplitMode;
+import com.pentryyy.fragmented_file_transfer_api.transfer.compression.ChunkCompression;
 import com.pentryyy.fragmented_file_transfer_api.transfer.core.Chunk;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.ChunkManifest;
 import com.pentryyy.fragmented_file_transfer_api.transfer.core.Feedback;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Integrity;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.SequenceRanges;
 
-public class FileSplitter {
+public class FileSplitter implements Closeable {
 
-    private static final int MAX_RETRIES   = 5;
-    private static final int META_SEQUENCE = -1;
+    private static final int MAX_RETRIES     = 5;
+    private static final int META_SEQUENCE   = -1;
+    private static final int DIGEST_SEQUENCE = -2;
+
+    private static final long MAX_MAPPED_WINDOW     = 256L * 1024 * 1024;
+    private static final int  RETRANSMIT_CACHE_SIZE = 64;
+
+    // Буфер последовательного чтения для SHA-256 в параллельном режиме
+    private static final int DIGEST_BUFFER_SIZE = 1024 * 1024;
+
+    // Чтение областей параллельного разбиения всех загрузок узла: поток на область виртуальный,
+    // одновременно читают файл не больше потоков, чем ядер
+    private static final Semaphore PARALLEL_READS = new Semaphore(Runtime.getRuntime().availableProcessors());
+
+    // Повтор отклоненной брокером отправки: экспоненциальная задержка от 50 мс до 2 с
+    private static final int  MAX_SEND_ATTEMPTS   = 6;
+    private static final long SEND_BACKOFF_MS     = 50;
+    private static final long MAX_SEND_BACKOFF_MS = 2000;
+
+    // Смещение индексов служебных чанков (-2, -1) в битовой карте сохраненных
+    private static final int CONTROL_OFFSET = 2;
+
+    // Признак раскладки по содержимому в метаданных и срок ожидания списка недостающих чанков
+    public static final String DEDUP_LAYOUT           = "CDC";
+    private static final long  REQUEST_TIMEOUT_MINUTES = 5;
 
     private final String                   processingId;
     private final KafkaTransmissionChannel channel;
-    private final int                      totalChunks;
+    private final CompressionType          compression;
+
+    // При потоковой загрузке неизвестной длины (-1) определяется в конце потока
+    private volatile int totalChunks;
 
-    private final Map<Integer, Chunk> chunks = new ConcurrentHashMap<>();
+    // Небольшой LRU последних отправленных чанков, остальные перечитываются из файла
+    private final Map<Integer, Chunk> recentChunks = Collections.synchronizedMap(
+        new LinkedHashMap<>(RETRANSMIT_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Chunk> eldest) {
+                return size() > RETRANSMIT_CACHE_SIZE;
+            }
+        }
+    );
     private final Set<Integer> pendingChunks = ConcurrentHashMap.newKeySet();
 
     private final Map<Integer, AtomicInteger> retryCounters = new ConcurrentHashMap<>();
     private final Set<Integer>                failedChunks  = ConcurrentHashMap.newKeySet();
 
+    private volatile Chunk       metaChunk;
+    private volatile Chunk       digestChunk;
+    private volatile String      fileDigest;
+    private volatile FileChannel source;
+    private volatile int         chunkSize;
+
+    // Передача с дедупликацией: смещения чанков переменной длины, страницы манифеста
+    // и список чанков, которых нет у получателя
+    private volatile long[]                        chunkOffsets;
+    private volatile List<Chunk>                   manifestPages = List.of();
+    private final CompletableFuture<SequenceRanges> wantedChunks = new CompletableFuture<>();
+    private volatile int                           wantedCount   = -1;
+
+    // Подтвержденные получателем, отправленные и отправленные после прошлой обратной связи чанки.
+    // При параллельном разбиении номера уходят не по порядку, поэтому границы недостаточно
+    private final BitSet acknowledged      = new BitSet();
+    private final BitSet sent              = new BitSet();
+    private final BitSet sentSinceFeedback = new BitSet();
+
+    // Чанки, подтвержденные брокером (acks=all), и места окна, освобожденные по обратной связи
+    private final BitSet persisted = new BitSet();
+    private final BitSet released  = new BitSet();
+    private volatile int persistedCount;
+
+    private volatile FlowController flow;
+
     private volatile boolean deliveryComplete;
 
-    public FileSplitter(String processingId, int totalChunks, KafkaTransmissionChannel channel) {
+    // Последняя отправка или обратная связь: по ней менеджер освобождает брошенного отправителя
+    private volatile long lastActivityAt = System.nanoTime();
+
+    public FileSplitter(
+        String processingId, 
+        int totalChunks, 
+        CompressionType compression, 
+        KafkaTransmissionChannel channel
+    ) {
         this.processingId = processingId;
         this.totalChunks  = totalChunks;
+        this.compression  = compression;
         this.channel      = channel;
     }
 
-    public void splitFile(File file, int chunkSize) throws IOException {
+    public void splitFile(File file, int chunkSize, SplitMode splitMode) throws IOException {
+        splitFile(file, chunkSize, splitMode, Runtime.getRuntime().availableProcessors());
+    }
+
+    public void splitFile(File file, int chunkSize, SplitMode splitMode, int workers) throws IOException {
+
+        // Источник остается открытым для повторной отправки потерянных чанков
+        this.source    = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        if (splitMode == SplitMode.DEDUP) {
+            splitDedup(chunkSize);
+            return;
+        }
+        this.chunkSize = chunkSize;
+        this.flow      = new FlowController(chunkSize);
+
+        // Отправка метаданных: количество фрагментов, размер чанка и файла для записи по смещению
+        String meta     = totalChunks + ":" + chunkSize + ":" + source.size();
+        byte[] metaData = meta.getBytes(StandardCharsets.UTF_8);
+        this.metaChunk  = new Chunk(META_SEQUENCE, metaData, processingId);
+        pendingChunks.add(META_SEQUENCE);
+        transmit(metaChunk);
+
+        // Отправка основных фрагментов, SHA-256 файла считается по ходу чтения
+        MessageDigest digest = Integrity.newFileDigest();
+        if (splitMode == SplitMode.MAPPED) {
+            splitMapped(chunkSize, digest);
+        } else if (splitMode == SplitMode.PARALLEL) {
+            splitParallel(chunkSize, workers, digest);
+        } else {
+            splitStream(file, chunkSize, digest);
+        }
+
+        // Завершающий чанк с контрольной суммой всего файла
+        byte[] digestData = digest.digest();
+        this.fileDigest   = HexFormat.of().formatHex(digestData);
+        this.digestChunk  = new Chunk(DIGEST_SEQUENCE, digestData, processingId);
+        pendingChunks.add(DIGEST_SEQUENCE);
+        transmit(digestChunk);
+    }
+
+    // Разбиение прямо из потока запроса: чанки уходят, пока тело еще принимается.
+    // Прочитанное один раз пишется в файл spoolFile, из него перечитываются потерянные чанки.
+    // Если длина неизвестна (contentLength < 0), итоговые метаданные отправляются в конце потока
+    public void splitStream(InputStream input, long contentLength, int chunkSize, File spoolFile) throws IOException {
+        this.source    = FileChannel.open(
+            spoolFile.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        );
+        this.chunkSize = chunkSize;
+        this.flow      = new FlowController(chunkSize);
+
+        if (contentLength >= 0) {
+            this.totalChunks = (int) Math.ceil((double) contentLength / chunkSize);
+        }
+        this.metaChunk = new Chunk(
+            META_SEQUENCE,
+            (totalChunks + ":" + chunkSize + ":" + contentLength).getBytes(StandardCharsets.UTF_8),
+            processingId
+        );
+        pendingChunks.add(META_SEQUENCE);
+        transmit(metaChunk);
+
+        MessageDigest digest   = Integrity.newFileDigest();
+        byte[]        buffer   = new byte[chunkSize];
+        long          position = 0;
+        int           sequence = 0;
+        int           bytesRead;
+        while ((bytesRead = input.readNBytes(buffer, 0, chunkSize)) > 0) {
+            Chunk chunk = new Chunk(
+                sequence,
+                Arrays.copyOf(buffer, bytesRead),
+                processingId
+            );
+
+            ByteBuffer data = chunk.getData().duplicate();
+            while (data.hasRemaining()) {
+                position += source.write(data, position);
+            }
+            digest.update(chunk.getData().duplicate());
+            sendNewChunk(chunk);
+
+            sequence++;
+        }
+
+        if (contentLength >= 0 && position != contentLength) {
+            throw new IOException("Upload ended after " + position + " of " + contentLength + " bytes (id " + processingId + ")");
+        }
+
+        // Длина стала известна: итоговые метаданные уходят перед контрольной суммой
+        if (contentLength < 0) {
+            this.totalChunks = sequence;
+            this.metaChunk   = new Chunk(
+                META_SEQUENCE,
+                (sequence + ":" + chunkSize + ":" + position).getBytes(StandardCharsets.UTF_8),
+                processingId
+            );
+            transmit(metaChunk);
+        }
+
+        byte[] digestData = digest.digest();
+        this.fileDigest   = HexFormat.of().formatHex(digestData);
+        this.digestChunk  = new Chunk(DIGEST_SEQUENCE, digestData, processingId);
+        pendingChunks.add(DIGEST_SEQUENCE);
+        transmit(digestChunk);
+    }
+
+    // Разбиение загрузки частями: чанки части отправляются, как только она записана,
+    // SHA-256 считается по непрерывному префиксу записанных частей. Размер части кратен чанку
+    public void splitUpload(UploadSession session, int chunkSize) throws IOException {
+        this.source    = FileChannel.open(session.getStagedFile().toPath(), StandardOpenOption.READ);
+        this.chunkSize = chunkSize;
+        this.flow      = new FlowController(chunkSize);
+
+        String meta     = totalChunks + ":" + chunkSize + ":" + session.getFileSize();
+        byte[] metaData = meta.getBytes(StandardCharsets.UTF_8);
+        this.metaChunk  = new Chunk(META_SEQUENCE, metaData, processingId);
+        pendingChunks.add(META_SEQUENCE);
+        transmit(metaChunk);
+
+        int           chunksPerPart = session.getPartSize() / chunkSize;
+        int           hashedParts   = 0;
+        MessageDigest digest        = Integrity.newFileDigest();
+        ByteBuffer    buffer        = ByteBuffer.allocate(DIGEST_BUFFER_SIZE);
+        try {
+            int part;
+            while ((part = session.awaitLandedPart()) >= 0) {
+                int first = part * chunksPerPart;
+                int last  = Math.min(totalChunks, first + chunksPerPart);
+                for (int sequence = first; sequence < last; sequence++) {
+                    sendNewChunk(readChunk(sequence));
+                }
+
+                while (hashedParts < session.getTotalParts() && session.isLanded(hashedParts)) {
+                    long position = (long) hashedParts * session.getPartSize();
+                    long end      = position + session.getPartLength(hashedParts);
+                    while (position < end) {
+                        buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                        int bytesRead = source.read(buffer, position);
+                        if (bytesRead < 0) {
+                            throw new IOException("Unexpected end of staged file (id " + processingId + ")");
+                        }
+                        buffer.flip();
+                        digest.update(buffer);
+                        position += bytesRead;
+                    }
+                    hashedParts++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Splitting interrupted (id " + processingId + ")");
+        }
+
+        if (hashedParts < session.getTotalParts()) {
+            throw new InterruptedIOException("Upload aborted (id " + processingId + ")");
+        }
+
+        byte[] digestData = digest.digest();
+        this.fileDigest   = HexFormat.of().formatHex(digestData);
+        this.digestChunk  = new Chunk(DIGEST_SEQUENCE, digestData, processingId);
+        pendingChunks.add(DIGEST_SEQUENCE);
+        transmit(digestChunk);
+    }
+
+    // Границы чанков по содержимому, chunkSize - их средний размер. Сначала уходят метаданные,
+    // манифест (длина и SHA-256 каждого чанка) и контрольная сумма файла, затем только чанки,
+    // которых получатель не нашел в своем хранилище
+    private void splitDedup(int chunkSize) throws IOException {
+        ContentDefinedChunker        chunker = new ContentDefinedChunker(chunkSize);
+        MessageDigest                digest  = Integrity.newFileDigest();
+        ContentDefinedChunker.Layout layout  = chunker.split(source, digest);
+
+        this.chunkOffsets = layout.offsets();
+        this.chunkSize    = layout.maxLength();
+        this.totalChunks  = layout.count();
+        this.flow         = new FlowController(chunker.getAverageSize());
 
-        // Отправка метаданных (общее количество фрагментов)
-        byte[] metaData  = String.valueOf(totalChunks).getBytes(StandardCharsets.UTF_8);
-        Chunk  metaChunk = new Chunk(META_SEQUENCE, metaData, processingId);
-        chunks.put(META_SEQUENCE, metaChunk);
+        String meta = totalChunks + ":" + chunker.getAverageSize() + ":" + source.size() + ":" + DEDUP_LAYOUT;
+        this.metaChunk = new Chunk(META_SEQUENCE, meta.getBytes(StandardCharsets.UTF_8), processingId);
         pendingChunks.add(META_SEQUENCE);
-        channel.sendChunk(metaChunk);
+        transmit(metaChunk);
+
+        List<Chunk> pages = new ArrayList<>();
+        for (int page = 0; page < ChunkManifest.getPageCount(totalChunks); page++) {
+            pages.add(new Chunk(
+                ChunkManifest.toPageSequence(page),
+                ChunkManifest.encodePage(page, totalChunks, layout.offsets(), layout.hashes()),
+                processingId
+            ));
+        }
+        this.manifestPages = pages;
+        for (Chunk page : pages) {
+            transmit(page);
+        }
+
+        byte[] digestData = digest.digest();
+        this.fileDigest   = HexFormat.of().formatHex(digestData);
+        this.digestChunk  = new Chunk(DIGEST_SEQUENCE, digestData, processingId);
+        pendingChunks.add(DIGEST_SEQUENCE);
+        transmit(digestChunk);
+
+        SequenceRanges wanted;
+        try {
+            wanted = wantedChunks.get(REQUEST_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Splitting interrupted (id " + processingId + ")");
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IOException("Receiver did not request chunks (id " + processingId + ")", e);
+        }
+        int count = 0;
+        for (int i = 0; i < wanted.getRangeCount(); i++) {
+            count += Math.max(0, Math.min(totalChunks, wanted.getEnd(i)) - Math.max(0, wanted.getStart(i)));
+        }
+        this.wantedCount = count;
+        System.out.println("Deduplicated transfer (id " + this.processingId + "): sending " + count + " of " + totalChunks + " chunks");
+
+        for (int i = 0; i < wanted.getRangeCount(); i++) {
+            int end = Math.min(totalChunks, wanted.getEnd(i));
+            for (int sequence = Math.max(0, wanted.getStart(i)); sequence < end; sequence++) {
+                sendNewChunk(readChunk(sequence));
+            }
+        }
+    }
 
-        // Отправка основных фрагментов
+    private void splitStream(File file, int chunkSize, MessageDigest digest) throws IOException {
         try (FileInputStream fis = new FileInputStream(file)) {
             byte[] buffer = new byte[chunkSize];
             int bytesRead;
@@ -56,68 +371,463 @@ public class FileSplitter {
 
                 // Отправляем данные чанков
                 Chunk chunk = new Chunk(
-                    sequence, 
-                    Arrays.copyOf(buffer, bytesRead), 
+                    sequence,
+                    Arrays.copyOf(buffer, bytesRead),
+                    processingId
+                );
+                digest.update(chunk.getData().duplicate());
+                sendNewChunk(chunk);
+
+                sequence++;
+            }
+        }
+    }
+
+    private void splitMapped(int chunkSize, MessageDigest digest) throws IOException {
+        long fileSize = source.size();
+
+        // Окно отображения кратно размеру чанка, чтобы чанк не пересекал границу окна
+        long windowSize = Math.max(1, MAX_MAPPED_WINDOW / chunkSize) * (long) chunkSize;
+        int  sequence   = 0;
+
+        for (long windowStart = 0; windowStart < fileSize; windowStart += windowSize) {
+            long windowLength = Math.min(windowSize, fileSize - windowStart);
+
+            MappedByteBuffer window = source.map(
+                FileChannel.MapMode.READ_ONLY,
+                windowStart,
+                windowLength
+            );
+
+            // Чанки - срезы отображения только для чтения, без копирования в кучу
+            for (int offset = 0; offset < windowLength; offset += chunkSize) {
+                int length = (int) Math.min(chunkSize, windowLength - offset);
+
+                Chunk chunk = new Chunk(
+                    sequence,
+                    window.slice(offset, length).asReadOnlyBuffer(),
                     processingId
                 );
-                chunks.put(sequence, chunk);
-                pendingChunks.add(sequence);
-                channel.sendChunk(chunk);
+                digest.update(chunk.getData().duplicate());
+                sendNewChunk(chunk);
 
                 sequence++;
             }
         }
     }
 
+    // Файл делится на непрерывные области по числу потоков, каждая читается позиционно
+    // и отправляется своим потоком. SHA-256 тем временем считается отдельным последовательным проходом.
+    // Потоки областей виртуальные: ожидание окна отправки не занимает поток платформы, а чтение
+    // ограничено общим для узла PARALLEL_READS, сколько бы параллельных загрузок ни шло
+    private void splitParallel(int chunkSize, int workers, MessageDigest digest) throws IOException {
+        int regions         = Math.max(1, Math.min(workers, totalChunks));
+        int chunksPerRegion = (totalChunks + regions - 1) / Math.max(1, regions);
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<CompletableFuture<Void>> tasks = new ArrayList<>();
+            for (int region = 0; region < regions; region++) {
+                int first = region * chunksPerRegion;
+                int last  = Math.min(totalChunks, first + chunksPerRegion);
+
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        for (int sequence = first; sequence < last; sequence++) {
+                            Chunk chunk = readRegionChunk(sequence);
+                            if (chunk == null) {
+                                break;
+                            }
+                            sendNewChunk(chunk);
+                        }
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+
+            hashSource(digest);
+
+            CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Chunk readRegionChunk(int sequence) throws IOException {
+        try {
+            PARALLEL_READS.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Splitting interrupted (id " + processingId + ")");
+        }
+
+        try {
+            return readChunk(sequence);
+        } finally {
+            PARALLEL_READS.release();
+        }
+    }
+
+    private void hashSource(MessageDigest digest) throws IOException {
+        ByteBuffer buffer   = ByteBuffer.allocate(DIGEST_BUFFER_SIZE);
+        long       position = 0;
+        int        bytesRead;
+        while ((bytesRead = source.read(buffer, position)) > 0) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+            position += bytesRead;
+        }
+    }
+
+    private void sendNewChunk(Chunk chunk) throws IOException {
+
+        // Ждем свободного места в окне неподтвержденных чанков
+        try {
+            flow.acquire(chunk.getData().remaining());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Splitting interrupted (id " + processingId + ")");
+        }
+
+        recentChunks.put(chunk.getSequenceNumber(), chunk);
+        pendingChunks.add(chunk.getSequenceNumber());
+        synchronized (acknowledged) {
+            sent.set(chunk.getSequenceNumber());
+            sentSinceFeedback.set(chunk.getSequenceNumber());
+        }
+        transmit(chunk);
+    }
+
+    // Сжатие выполняется непосредственно перед отправкой, в кэше чанки хранятся исходными
+    private void transmit(Chunk chunk) {
+        send(ChunkCompression.compress(chunk, compression), 1);
+    }
+
+    private void send(Chunk chunk, int attempt) {
+        lastActivityAt = System.nanoTime();
+        channel.sendChunk(chunk).whenComplete((result, error) -> {
+            if (error == null) {
+                onPersisted(chunk.getSequenceNumber());
+            } else {
+                onSendFailed(chunk, attempt, error);
+            }
+        });
+    }
+
+    private void onPersisted(int sequence) {
+
+        // Страницы манифеста в учет сохраненных не входят
+        if (sequence < DIGEST_SEQUENCE) {
+            return;
+        }
+
+        synchronized (acknowledged) {
+            if (persisted.get(sequence + CONTROL_OFFSET)) {
+                return;
+            }
+            persisted.set(sequence + CONTROL_OFFSET);
+            persistedCount++;
+
+            // Место в окне здесь не освобождается: подтверждение брокера приходит раньше
+            // получателя, и окно должно ограничивать именно неподтвержденные получателем чанки
+        }
+    }
+
+    private void onSendFailed(Chunk chunk, int attempt, Throwable error) {
+        if (attempt >= MAX_SEND_ATTEMPTS) {
+            System.err.println("Chunk #" + chunk.getSequenceNumber() + " (id " + this.processingId + ") was rejected by broker: " + error.getMessage());
+            return;
+        }
+
+        // Повторяем сразу, не дожидаясь обратной связи от получателя
+        long backoff = Math.min(MAX_SEND_BACKOFF_MS, SEND_BACKOFF_MS << (attempt - 1));
+        CompletableFuture.runAsync(
+            () -> send(chunk, attempt + 1),
+            CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS)
+        );
+    }
+
+    // Вызывается под блокировкой acknowledged
+    private void releaseSlot(int sequence) {
+        if (released.get(sequence)) {
+            return;
+        }
+        released.set(sequence);
+
+        FlowController flowController = this.flow;
+        if (flowController != null) {
+            flowController.release(1);
+        }
+    }
+
+    // Чанк для повторной отправки: из LRU или позиционным чтением по смещению seq * chunkSize
+    private Chunk loadChunk(int sequence) throws IOException {
+        if (sequence == META_SEQUENCE) {
+            return metaChunk;
+        }
+
+        if (sequence == DIGEST_SEQUENCE) {
+            return digestChunk;
+        }
+
+        if (ChunkManifest.isPageSequence(sequence)) {
+            List<Chunk> pages = manifestPages;
+            int         page  = ChunkManifest.toPageIndex(sequence);
+            return page < pages.size() ? pages.get(page) : null;
+        }
+
+        Chunk cached = recentChunks.get(sequence);
+        if (cached != null) {
+            return cached;
+        }
+
+        if (this.source == null || sequence < 0 || (totalChunks >= 0 && sequence >= totalChunks)) {
+            return null;
+        }
+        return readChunk(sequence);
+    }
+
+    // Позиционное чтение по смещению seq * chunkSize (при дедупликации - по смещению из раскладки),
+    // безопасно из нескольких потоков
+    private Chunk readChunk(int sequence) throws IOException {
+        FileChannel fileChannel = this.source;
+        long[]      offsets     = this.chunkOffsets;
+
+        long position = offsets != null ? offsets[sequence] : (long) sequence * chunkSize;
+        int  length   = offsets != null
+            ? (int) (offsets[sequence + 1] - position)
+            : (int) Math.min(chunkSize, fileChannel.size() - position);
+        if (length <= 0) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+
+        return new Chunk(sequence, buffer, processingId);
+    }
+
     public void receiveFeedback(Feedback feedback) {
-        if (!feedback.getProcessingId().equals(processingId)) 
+        if (!feedback.getProcessingId().equals(processingId))
             return;
-        
-        Set<Integer> missing = feedback.getMissingSequences();
-        if (missing.isEmpty()) {
+        lastActivityAt = System.nanoTime();
+
+        // Ответ на манифест: отправка ждет его в splitDedup
+        if (feedback.getWantedSequences() != null) {
+            wantedChunks.complete(feedback.getWantedSequences());
+        }
+
+        // Подтверждение префикса только освобождает окно. Пропуски и доля потерь оцениваются
+        // по полной обратной связи, иначе повтор, еще идущий к получателю, счелся бы потерянным
+        if (feedback.isProgress()) {
+            acknowledgePrefix(feedback.getHorizon());
+            return;
+        }
+
+        // Пустой список означает доставку, только если оценены все чанки
+        SequenceRanges missing = feedback.getMissingSequences();
+        if (missing.isEmpty() && totalChunks >= 0 && feedback.getHorizon() >= totalChunks) {
             deliveryComplete = true;
             return;
         }
-        
-        // Считаем потерянные чанки
+
+        // Подтверждения и потери по окну отправленных чанков ниже границы оценки
+        List<Integer> lost = collectLost(missing, feedback.getHorizon());
+
+        // Служебные чанки (метаданные, контрольная сумма) запрашиваются отдельно
+        for (int i = 0; i < missing.getRangeCount() && missing.getStart(i) < 0; i++) {
+            for (int seq = missing.getStart(i); seq < Math.min(0, missing.getEnd(i)); seq++) {
+                lost.add(seq);
+            }
+        }
+
+        // Считаем потерянные чанки. Чанк, который еще не создан (контрольная сумма
+        // до конца разбиения), попыткой не считается и будет запрошен снова
         Set<Integer> newPending = ConcurrentHashMap.newKeySet();
-        
-        for (int seq : missing) {
+        List<Chunk>  resend     = new ArrayList<>();
+
+        for (int seq : lost) {
             if (failedChunks.contains(seq))
                 continue;
-            
+
+            Chunk chunk;
+            try {
+                chunk = loadChunk(seq);
+            } catch (IOException e) {
+                System.err.println("Failed to reread chunk #" + seq + " (id " + this.processingId + "): " + e.getMessage());
+                continue;
+            }
+            if (chunk == null) {
+                continue;
+            }
+
             int attempts = retryCounters
                 .computeIfAbsent(seq, k -> new AtomicInteger(0))
                 .incrementAndGet();
-            
+
             if (attempts > MAX_RETRIES) {
                 failedChunks.add(seq);
+
+                // Чанк больше не отправляется - его место в окне не должно пропасть
+                if (seq >= 0) {
+                    synchronized (acknowledged) {
+                        releaseSlot(seq);
+                    }
+                }
             } else {
                 newPending.add(seq);
+                resend.add(chunk);
             }
         }
-        
+
         pendingChunks.clear();
         pendingChunks.addAll(newPending);
 
-        // Отправляем требуемый чанк
-        for (int seq : pendingChunks) {
-            Chunk chunk = chunks.get(seq);
-            if (chunk != null) {
-                channel.sendChunk(chunk);
+        // Повтор, как и новый чанк, до следующей обратной связи потерянным не считается
+        synchronized (acknowledged) {
+            for (Chunk chunk : resend) {
+                if (chunk.getSequenceNumber() >= 0) {
+                    sentSinceFeedback.set(chunk.getSequenceNumber());
+                }
             }
         }
 
+        // Отправляем требуемые чанки
+        for (Chunk chunk : resend) {
+            transmit(chunk);
+        }
+
         if (!failedChunks.isEmpty()) {
             deliveryComplete = false;
         }
     }
 
+    // Чанки ниже первой дыры получателя подтверждены, отправленные после прошлой
+    // обратной связи остаются отмеченными до следующей оценки потерь
+    private void acknowledgePrefix(int prefix) {
+        synchronized (acknowledged) {
+            int limit = Math.min(sent.length(), prefix);
+            for (int seq = acknowledged.nextClearBit(0); seq < limit; seq = acknowledged.nextClearBit(seq + 1)) {
+                if (sent.get(seq)) {
+                    acknowledged.set(seq);
+                    releaseSlot(seq);
+                }
+            }
+        }
+    }
+
+    // Чанк подтвержден, если отправлен и не указан в списке пропущенных.
+    // Потерянным считается только чанк, отправленный до предыдущей обратной связи:
+    // у более свежих еще не было времени дойти до получателя. Неотправленные номера
+    // из списка пропущенных (впереди другой области) не считаются ни потерянными, ни подтвержденными
+    private List<Integer> collectLost(SequenceRanges missing, int horizon) {
+        List<Integer> lost = new ArrayList<>();
+
+        FlowController flowController = this.flow;
+        if (flowController == null) {
+            return lost;
+        }
+
+        synchronized (acknowledged) {
+            int limit     = Math.min(sent.length(), horizon);
+            int evaluated = 0;
+
+            for (int seq = acknowledged.nextClearBit(0); seq < limit; seq = acknowledged.nextClearBit(seq + 1)) {
+                if (!sent.get(seq)) {
+                    continue;
+                }
+
+                boolean isOld = !sentSinceFeedback.get(seq);
+                if (isOld) {
+                    evaluated++;
+                }
+
+                if (!missing.contains(seq)) {
+                    acknowledged.set(seq);
+                    releaseSlot(seq);
+                } else if (isOld) {
+                    lost.add(seq);
+                }
+            }
+            sentSinceFeedback.clear();
+
+            flowController.onFeedback(evaluated == 0 ? 0 : (double) lost.size() / evaluated);
+        }
+
+        return lost;
+    }
+
+    public int getWindowSize() {
+        FlowController flowController = this.flow;
+        return flowController == null ? 0 : flowController.getWindowSize();
+    }
+
+    public int getInFlight() {
+        FlowController flowController = this.flow;
+        return flowController == null ? 0 : flowController.getInFlight();
+    }
+
+    public double getSendRate() {
+        FlowController flowController = this.flow;
+        return flowController == null ? 0 : flowController.getSendRate();
+    }
+
+    public int getPersistedChunks() {
+        return persistedCount;
+    }
+
+    // Все отправляемые чанки, включая служебные, подтверждены брокером
+    public boolean isFullyPersisted() {
+        int scheduled = getScheduledChunks();
+        return scheduled >= 0 && persistedCount >= scheduled;
+    }
+
+    // Число чанков, уходящих в Kafka: при дедупликации только запрошенные получателем,
+    // иначе все. -1, пока оно не известно
+    private int getScheduledChunks() {
+        if (chunkOffsets != null) {
+            int count = wantedCount;
+            return count < 0 ? -1 : count + CONTROL_OFFSET;
+        }
+        return totalChunks < 0 ? -1 : totalChunks + CONTROL_OFFSET;
+    }
+
+    public String getFileDigest() {
+        return fileDigest;
+    }
+
     public boolean isDeliveryComplete() {
         return deliveryComplete;
     }
 
+    // Доставка не подтверждена, и ни отправок, ни обратной связи не было дольше timeoutNanos
+    public boolean isIdle(long now, long timeoutNanos) {
+        return !deliveryComplete && now - lastActivityAt >= timeoutNanos;
+    }
+
     public Set<Integer> getFailedChunks() {
         return Collections.unmodifiableSet(failedChunks);
     }
+
+    @Override
+    public void close() throws IOException {
+        recentChunks.clear();
+
+        FileChannel fileChannel = this.source;
+        if (fileChannel != null) {
+            fileChannel.close();
+        }
+    }
 }
@@ -0,0 +1,128 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.sender;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Окно неподтвержденных чанков с регулировкой AIMD по доле потерь из обратной связи
+public class FlowController {
+
+    private static final long INITIAL_WINDOW_BYTES = 4L * 1024 * 1024;
+    private static final long MAX_WINDOW_BYTES     = 64L * 1024 * 1024;
+    private static final int  MIN_WINDOW           = 8;
+
+    // Доля потерь, выше которой окно уменьшается вдвое
+    private static final double LOSS_THRESHOLD = 0.02;
+    private static final double DECREASE_RATIO = 0.5;
+
+    // Без обратной связи дольше этого срока окно уменьшается и разрешается пробная отправка
+    private static final long ACK_TIMEOUT_MS = 3000;
+
+    private final ReentrantLock lock      = new ReentrantLock();
+    private final Condition     hasWindow = lock.newCondition();
+
+    private final int minWindow;
+    private final int maxWindow;
+
+    private double  window;
+    private int     inFlight;
+    private boolean slowStart = true;
+
+    private long   sentBytes;
+    private long   rateMarkBytes;
+    private long   rateMarkTime = System.nanoTime();
+    private double sendRate;
+
+    public FlowController(int chunkSize) {
+        this.minWindow = MIN_WINDOW;
+        this.maxWindow = (int) Math.max(MIN_WINDOW, MAX_WINDOW_BYTES / chunkSize);
+        this.window    = Math.min(maxWindow, Math.max(MIN_WINDOW, INITIAL_WINDOW_BYTES / chunkSize));
+    }
+
+    public void acquire(int bytes) throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) window) {
+                if (!hasWindow.await(ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+
+                    // Подтверждений нет: считаем это потерей и отправляем пробный чанк
+                    decrease();
+                    break;
+                }
+            }
+            inFlight++;
+            sentBytes += bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(int chunks) {
+        if (chunks <= 0) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            inFlight = Math.max(0, inFlight - chunks);
+            hasWindow.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onFeedback(double lossRatio) {
+        lock.lock();
+        try {
+            if (lossRatio > LOSS_THRESHOLD) {
+                decrease();
+            } else if (slowStart) {
+                window = Math.min(maxWindow, window * 2);
+            } else {
+                window = Math.min(maxWindow, window + Math.max(1, window / 8));
+            }
+
+            long now = System.nanoTime();
+            sendRate      = (sentBytes - rateMarkBytes) * 1e9 / Math.max(1, now - rateMarkTime);
+            rateMarkBytes = sentBytes;
+            rateMarkTime  = now;
+
+            hasWindow.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease() {
+        slowStart = false;
+        window    = Math.max(minWindow, window * DECREASE_RATIO);
+    }
+
+    public int getWindowSize() {
+        lock.lock();
+        try {
+            return (int) window;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Байт в секунду за последний интервал обратной связи
+    public double getSendRate() {
+        lock.lock();
+        try {
+            return sendRate;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
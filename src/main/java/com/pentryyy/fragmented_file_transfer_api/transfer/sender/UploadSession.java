@@ -0,0 +1,231 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.sender;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.pentryyy.fragmented_file_transfer_api.exception.UploadPartInvalidException;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.SequenceRanges;
+
+// Загрузка файла частями: части приходят параллельно и в любом порядке, каждая пишется
+// по своему смещению в заранее выделенный файл. Разбиение на чанки забирает части по мере прихода
+public class UploadSession implements Closeable {
+
+    private final String      processingId;
+    private final File        stagedFile;
+    private final long        fileSize;
+    private final int         partSize;
+    private final int         totalParts;
+    private final FileChannel output;
+
+    private final ReentrantLock lock      = new ReentrantLock();
+    private final Condition     hasLanded = lock.newCondition();
+
+    // Записанные части, части в процессе записи и очередь записанных, еще не отданных разбиению
+    private final BitSet         landed  = new BitSet();
+    private final BitSet         writing = new BitSet();
+    private final Queue<Integer> pending = new ArrayDeque<>();
+
+    private int     landedCount;
+    private int     handedOut;
+    private boolean aborted;
+
+    // Время последнего обращения клиента: по нему брошенная сессия снимается по тайм-ауту
+    private volatile long lastActivity = System.nanoTime();
+
+    public UploadSession(String processingId, File stagedFile, long fileSize, int partSize) throws IOException {
+        this.processingId = processingId;
+        this.stagedFile   = stagedFile;
+        this.fileSize     = fileSize;
+        this.partSize     = partSize;
+        this.totalParts   = (int) Math.ceil((double) fileSize / partSize);
+
+        try (RandomAccessFile file = new RandomAccessFile(stagedFile, "rw")) {
+            file.setLength(fileSize);
+        }
+        this.output = FileChannel.open(stagedFile.toPath(), StandardOpenOption.WRITE);
+    }
+
+    public long getPartLength(int part) {
+        return Math.min(partSize, fileSize - (long) part * partSize);
+    }
+
+    // Повторная загрузка уже записанной части игнорируется: клиент может повторять запрос после обрыва
+    public void writePart(int part, InputStream body) throws IOException {
+        if (part < 0 || part >= totalParts) {
+            throw new UploadPartInvalidException("номер " + part + " вне диапазона 0.." + (totalParts - 1));
+        }
+
+        lastActivity = System.nanoTime();
+
+        lock.lock();
+        try {
+            if (aborted) {
+                throw new UploadPartInvalidException("загрузка " + processingId + " отменена");
+            }
+            if (landed.get(part)) {
+                return;
+            }
+            if (writing.get(part)) {
+                throw new UploadPartInvalidException("часть " + part + " уже записывается");
+            }
+            writing.set(part);
+        } finally {
+            lock.unlock();
+        }
+
+        boolean written = false;
+        try {
+            long position = (long) part * partSize;
+            long length   = getPartLength(part);
+            long received = 0;
+
+            // Тело запроса переносится в файл без промежуточного буфера в куче
+            ReadableByteChannel source = Channels.newChannel(body);
+            while (received < length) {
+                long transferred = output.transferFrom(source, position + received, length - received);
+                if (transferred <= 0) {
+                    break;
+                }
+                received += transferred;
+            }
+
+            if (received != length || body.read() != -1) {
+                throw new UploadPartInvalidException("часть " + part + " должна занимать " + length + " байт");
+            }
+            written = true;
+        } finally {
+            lastActivity = System.nanoTime();
+
+            lock.lock();
+            try {
+                writing.clear(part);
+                if (written) {
+                    landed.set(part);
+                    landedCount++;
+                    pending.add(part);
+                    hasLanded.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Очередная записанная часть в порядке прихода; -1, когда отданы все части или загрузка отменена
+    public int awaitLandedPart() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending.isEmpty()) {
+                if (aborted || handedOut >= totalParts) {
+                    return -1;
+                }
+                hasLanded.await();
+            }
+            handedOut++;
+            return pending.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isLanded(int part) {
+        lock.lock();
+        try {
+            return landed.get(part);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public SequenceRanges getLandedParts() {
+        lock.lock();
+        try {
+            SequenceRanges.Builder builder = SequenceRanges.builder();
+            for (int part = landed.nextSetBit(0); part >= 0; part = landed.nextSetBit(part + 1)) {
+                builder.add(part);
+            }
+            return builder.build();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMissingParts() {
+        lock.lock();
+        try {
+            return totalParts - landedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Простаивает: клиент не обращался дольше timeoutNanos и ни одна часть не записывается сейчас
+    public boolean isIdle(long now, long timeoutNanos) {
+        lock.lock();
+        try {
+            return writing.isEmpty() && now - lastActivity >= timeoutNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void touch() {
+        lastActivity = System.nanoTime();
+    }
+
+    public boolean isAborted() {
+        lock.lock();
+        try {
+            return aborted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void abort() {
+        lock.lock();
+        try {
+            aborted = true;
+            hasLanded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getProcessingId() {
+        return processingId;
+    }
+
+    public File getStagedFile() {
+        return stagedFile;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public int getPartSize() {
+        return partSize;
+    }
+
+    public int getTotalParts() {
+        return totalParts;
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
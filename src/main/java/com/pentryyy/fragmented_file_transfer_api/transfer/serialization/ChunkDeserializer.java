@@ -0,0 +1,68 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.serialization;
+
+import java.nio.ByteBuffer;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Chunk;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Integrity;
+
+public class ChunkDeserializer implements Deserializer<Chunk> {
+
+    @Override
+    public Chunk deserialize(String topic, byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+
+        if (bytes.length < 1) {
+            throw new SerializationException("Chunk record is empty");
+        }
+
+        byte version = bytes[0];
+        if (version != ChunkSerializer.VERSION) {
+            throw new SerializationException("Unsupported chunk format version: " + version);
+        }
+
+        if (bytes.length < ChunkSerializer.HEADER_SIZE) {
+            throw new SerializationException("Chunk record is too short: " + bytes.length + " bytes");
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+
+        byte flags = in.get();
+
+        CompressionType compression;
+        try {
+            compression = CompressionType.fromId(in.get());
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException(e.getMessage(), e);
+        }
+
+        String processingId   = WireFormat.readUuid(in);
+        int    sequenceNumber = in.getInt();
+        int    checksumValue  = in.getInt();
+        int    originalLength = in.getInt();
+        int    length         = in.getInt();
+
+        long checksum = (flags & ChunkSerializer.FLAG_CHECKSUM) != 0
+            ? Integer.toUnsignedLong(checksumValue)
+            : Integrity.NO_CHECKSUM;
+
+        if (length < 0 || length != in.remaining()) {
+            throw new SerializationException("Chunk payload length mismatch: " + length + " != " + in.remaining());
+        }
+
+        // Данные остаются срезом массива записи, без дополнительной копии
+        return new Chunk(
+            sequenceNumber, 
+            in.slice(), 
+            processingId, 
+            compression, 
+            originalLength,
+            checksum
+        );
+    }
+}
@@ -0,0 +1,50 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Chunk;
+
+// Бинарный формат чанка: версия (1 байт), флаги (1 байт), кодек сжатия (1 байт),
+// UUID обработки (16 байт), номер последовательности (4 байта), CRC32C (4 байта),
+// исходная длина (4 байта), длина данных (4 байта), данные.
+// CRC32C покрывает данные в том виде, в каком они переданы (после сжатия)
+public class ChunkSerializer implements Serializer<Chunk> {
+
+    public static final byte VERSION     = 1;
+    public static final int  HEADER_SIZE = 1 + 1 + 1 + 16 + 4 + 4 + 4 + 4;
+
+    // Флаг: поле CRC32C заполнено
+    public static final byte FLAG_CHECKSUM = 0x01;
+
+    @Override
+    public byte[] serialize(String topic, Chunk chunk) {
+        if (chunk == null) {
+            return null;
+        }
+
+        ByteBuffer      data        = chunk.getData().duplicate();
+        int             length      = data.remaining();
+        UUID            id          = WireFormat.toUuid(chunk.getProcessingId());
+        CompressionType compression = chunk.isCompressed() ? chunk.getCompression() : CompressionType.NONE;
+
+        byte[]     bytes = new byte[HEADER_SIZE + length];
+        ByteBuffer out   = ByteBuffer.wrap(bytes);
+
+        out.put(VERSION);
+        out.put(chunk.hasChecksum() ? FLAG_CHECKSUM : 0);
+        out.put(compression.getId());
+        out.putLong(id.getMostSignificantBits());
+        out.putLong(id.getLeastSignificantBits());
+        out.putInt(chunk.getSequenceNumber());
+        out.putInt(chunk.hasChecksum() ? (int) chunk.getChecksum() : 0);
+        out.putInt(chunk.isCompressed() ? chunk.getOriginalLength() : length);
+        out.putInt(length);
+        out.put(data);
+
+        return bytes;
+    }
+}
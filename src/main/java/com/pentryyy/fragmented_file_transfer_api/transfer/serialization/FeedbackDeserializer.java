@@ -0,0 +1,85 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.serialization;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Feedback;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.SequenceRanges;
+
+public class FeedbackDeserializer implements Deserializer<Feedback> {
+
+    @Override
+    public Feedback deserialize(String topic, byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+
+        if (bytes.length < FeedbackSerializer.HEADER_SIZE) {
+            throw new SerializationException("Feedback record is too short: " + bytes.length + " bytes");
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+
+        byte version = in.get();
+        if (version != FeedbackSerializer.VERSION) {
+            throw new SerializationException("Unsupported feedback format version: " + version);
+        }
+
+        byte   flags        = in.get();
+        String processingId = WireFormat.readUuid(in);
+        int    totalChunks  = in.getInt();
+        int    horizon      = in.getInt();
+        int    count        = in.getInt();
+
+        if (count < 0) {
+            throw new SerializationException("Feedback range count is negative: " + count);
+        }
+
+        SequenceRanges missing = readRanges(in, count);
+
+        // Запрошенные чанки передачи с дедупликацией
+        SequenceRanges wanted = null;
+        int            wantedCount;
+        try {
+            wantedCount = in.getInt();
+        } catch (BufferUnderflowException e) {
+            throw new SerializationException("Feedback wanted ranges are missing", e);
+        }
+        if (wantedCount >= 0) {
+            wanted = readRanges(in, wantedCount);
+        }
+
+        return new Feedback(
+            processingId, 
+            totalChunks, 
+            missing, 
+            horizon, 
+            wanted, 
+            (flags & FeedbackSerializer.FLAG_PROGRESS) != 0
+        );
+    }
+
+    private SequenceRanges readRanges(ByteBuffer in, int count) {
+        SequenceRanges.Builder builder = SequenceRanges.builder();
+        try {
+            int end = 0;
+            for (int i = 0; i < count; i++) {
+                int start;
+                if (i == 0) {
+                    int zigzag = WireFormat.readVarint(in);
+                    start = (zigzag >>> 1) ^ -(zigzag & 1);
+                } else {
+                    start = end + WireFormat.readVarint(in);
+                }
+                end = start + WireFormat.readVarint(in);
+                builder.addRange(start, end);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new SerializationException("Feedback ranges are corrupted", e);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,69 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Feedback;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.SequenceRanges;
+
+// Бинарный формат обратной связи: версия (1 байт), флаги (1 байт), UUID обработки (16 байт),
+// общее количество чанков (4 байта), граница оценки (4 байта), количество диапазонов (4 байта), диапазоны,
+// затем количество диапазонов запрошенных чанков дедупликации (4 байта, -1 - нет) и сами диапазоны.
+// Диапазон - varint-пара: отступ от конца предыдущего (для первого - zigzag начала) и длина
+public class FeedbackSerializer implements Serializer<Feedback> {
+
+    public static final byte VERSION     = 1;
+    public static final int  HEADER_SIZE = 1 + 1 + 16 + 4 + 4 + 4;
+
+    // Флаг: подтверждение префикса без оценки пропусков
+    public static final byte FLAG_PROGRESS = 0x01;
+
+    @Override
+    public byte[] serialize(String topic, Feedback feedback) {
+        if (feedback == null) {
+            return null;
+        }
+
+        SequenceRanges missing = feedback.getMissingSequences();
+        SequenceRanges wanted  = feedback.getWantedSequences();
+        UUID           id      = WireFormat.toUuid(feedback.getProcessingId());
+
+        int        wantedRanges = wanted == null ? 0 : wanted.getRangeCount();
+        ByteBuffer out          = ByteBuffer.allocate(
+            HEADER_SIZE + 4 + (missing.getRangeCount() + wantedRanges) * 2 * WireFormat.MAX_VARINT_SIZE
+        );
+
+        out.put(VERSION);
+        out.put(feedback.isProgress() ? FLAG_PROGRESS : 0);
+        out.putLong(id.getMostSignificantBits());
+        out.putLong(id.getLeastSignificantBits());
+        out.putInt(feedback.getTotalChunks());
+        out.putInt(feedback.getHorizon());
+        out.putInt(missing.getRangeCount());
+        writeRanges(out, missing);
+
+        out.putInt(wanted == null ? -1 : wanted.getRangeCount());
+        if (wanted != null) {
+            writeRanges(out, wanted);
+        }
+
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    private void writeRanges(ByteBuffer out, SequenceRanges ranges) {
+        for (int i = 0; i < ranges.getRangeCount(); i++) {
+            int start = ranges.getStart(i);
+            int end   = ranges.getEnd(i);
+
+            if (i == 0) {
+                WireFormat.writeVarint(out, (start << 1) ^ (start >> 31));
+            } else {
+                WireFormat.writeVarint(out, start - ranges.getEnd(i - 1));
+            }
+            WireFormat.writeVarint(out, end - start);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+final class WireFormat {
+
+    static final int MAX_VARINT_SIZE = 5;
+
+    private WireFormat() {}
+
+    static UUID toUuid(String processingId) {
+        try {
+            return UUID.fromString(processingId);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new SerializationException("Processing id is not a UUID: " + processingId, e);
+        }
+    }
+
+    static String readUuid(ByteBuffer in) {
+        return new UUID(in.getLong(), in.getLong()).toString();
+    }
+
+    // Беззнаковый varint: по 7 бит на байт, старший бит - признак продолжения
+    static void writeVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("Varint is too long");
+    }
+}
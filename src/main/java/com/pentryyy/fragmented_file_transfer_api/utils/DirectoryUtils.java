@@ -2,28 +2,74 @@ package com.pentryyy.fragmented_file_transfer_api.utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 
 import org.springframework.web.multipart.MultipartFile;
 
 import com.pentryyy.fragmented_file_transfer_api.exception.ProcessedFileIsCorruptedException;
 
 public class DirectoryUtils {
-    private static final String RESOURCES_DIR = "src/main/resources/";
+    private static final String RESOURCES_DIR  = "src/main/resources/";
+    private static final String PART_FILE_NAME = "assembling.part";
 
     public static String getOutputDir(String processingId) {
         return RESOURCES_DIR + "output/" + processingId + "/";
     }
 
+    // Файл, в который чанки пишутся по мере получения до завершения сборки
+    public static File getPartFile(String processingId) {
+        return new File(getOutputDir(processingId) + PART_FILE_NAME);
+    }
+
+    // Чанки завершенных передач по SHA-256 содержимого для дедупликации
+    public static String getChunkStoreDir() {
+        return RESOURCES_DIR + "chunks/";
+    }
+
+    // Собранные файлы по SHA-256: жесткие ссылки на итоговые файлы задач
+    public static String getContentDir() {
+        return RESOURCES_DIR + "contents/";
+    }
+
+    public static File getContentFile(String digest) {
+        return new File(getContentDir() + digest.substring(0, 2) + "/" + digest);
+    }
+
     public static File convert(MultipartFile multipartFile) throws IOException {
+        return convert(multipartFile, null);
+    }
+
+    // Хэш считается при копировании, без отдельного прохода по файлу
+    public static File convert(MultipartFile multipartFile, MessageDigest digest) throws IOException {
         Path tempFile = Files.createTempFile("temp-", multipartFile.getOriginalFilename());
-        Files.copy(multipartFile.getInputStream(), tempFile, StandardCopyOption.REPLACE_EXISTING);
+        try (InputStream input = digest != null
+            ? new DigestInputStream(multipartFile.getInputStream(), digest)
+            : multipartFile.getInputStream()
+        ) {
+            Files.copy(input, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // Файл сбрасывается на диск до ответа клиенту: после 202 разбиение идет в фоне
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
         
         return tempFile.toFile();
     }
 
+    // Файл потоковой загрузки: принятые чанки, из которых перечитываются потерянные
+    public static File createSpoolFile(String fileName) throws IOException {
+        String suffix = fileName == null ? null : new File(fileName).getName();
+        return Files.createTempFile("temp-", suffix).toFile();
+    }
+
     public static File getOutputFile(String processingId) {
         File outputDir = new File(getOutputDir(processingId));
         
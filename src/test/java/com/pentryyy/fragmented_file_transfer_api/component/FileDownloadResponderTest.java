@@ -0,0 +1,226 @@
+package com.pentryyy.fragmented_file_transfer_api.component;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+class FileDownloadResponderTest {
+
+    private static final String DIGEST = "ab12";
+    private static final String ETAG   = "\"" + DIGEST + "\"";
+
+    private final FileDownloadResponder responder = new FileDownloadResponder();
+
+    @TempDir
+    Path directory;
+
+    private File   file;
+    private byte[] content;
+
+    @BeforeEach
+    void createFile() throws IOException {
+        content = new byte[100];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        file = Files.write(directory.resolve("assembled.bin"), content).toFile();
+    }
+
+    @Test
+    void servesWholeFileWithoutRange() throws IOException {
+        MockHttpServletResponse              servletResponse = new MockHttpServletResponse();
+        ResponseEntity<StreamingResponseBody> response       = responder.respond(file, DIGEST, get(), servletResponse);
+
+        // ETag и Last-Modified выставляет проверка условных заголовков
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(ETAG, servletResponse.getHeader(HttpHeaders.ETAG));
+        assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertArrayEquals(content, body(response));
+    }
+
+    @Test
+    void servesSingleRange() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = respond(get(HttpHeaders.RANGE, "bytes=10-19"));
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 10-19/100", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(10, response.getHeaders().getContentLength());
+        assertArrayEquals(Arrays.copyOfRange(content, 10, 20), body(response));
+    }
+
+    @Test
+    void servesSuffixRange() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = respond(get(HttpHeaders.RANGE, "bytes=-10"));
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 90-99/100", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(Arrays.copyOfRange(content, 90, 100), body(response));
+    }
+
+    @Test
+    void clampsSuffixLongerThanFile() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = respond(get(HttpHeaders.RANGE, "bytes=-500"));
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 0-99/100", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(content, body(response));
+    }
+
+    @Test
+    void clampsOpenEndedRange() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = respond(get(HttpHeaders.RANGE, "bytes=95-"));
+
+        assertEquals("bytes 95-99/100", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(Arrays.copyOfRange(content, 95, 100), body(response));
+    }
+
+    @Test
+    void rejectsRangeBeyondEnd() {
+        ResponseEntity<StreamingResponseBody> response = respond(get(HttpHeaders.RANGE, "bytes=200-300"));
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */100", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void skipsUnsatisfiableRangeAmongOthers() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = respond(get(HttpHeaders.RANGE, "bytes=200-300,0-4"));
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 0-4/100", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(Arrays.copyOfRange(content, 0, 5), body(response));
+    }
+
+    @Test
+    void servesMultipleRangesAsMultipart() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = respond(get(HttpHeaders.RANGE, "bytes=0-4,50-54"));
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("multipart", response.getHeaders().getContentType().getType());
+        assertEquals("byteranges", response.getHeaders().getContentType().getSubtype());
+
+        byte[] body = body(response);
+        assertEquals(response.getHeaders().getContentLength(), body.length);
+
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        assertTrue(text.contains("Content-Range: bytes 0-4/100"));
+        assertTrue(text.contains("Content-Range: bytes 50-54/100"));
+    }
+
+    @Test
+    void servesWholeFileForOverlappingRanges() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = respond(get(HttpHeaders.RANGE, "bytes=0-79,20-99"));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(content, body(response));
+    }
+
+    @Test
+    void ignoresMalformedRange() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = respond(get(HttpHeaders.RANGE, "bytes=abc"));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(content, body(response));
+    }
+
+    @Test
+    void answersNotModifiedForMatchingIfNoneMatch() {
+        assertEquals(HttpStatus.NOT_MODIFIED, respond(get(HttpHeaders.IF_NONE_MATCH, ETAG)).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, respond(get(HttpHeaders.IF_NONE_MATCH, "\"other\", " + ETAG)).getStatusCode());
+    }
+
+    @Test
+    void servesFileForDifferentIfNoneMatch() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = respond(get(HttpHeaders.IF_NONE_MATCH, "\"other\""));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(content, body(response));
+    }
+
+    @Test
+    void failsPreconditionForDifferentIfMatch() {
+        assertEquals(HttpStatus.PRECONDITION_FAILED, respond(get(HttpHeaders.IF_MATCH, "\"other\"")).getStatusCode());
+        assertEquals(HttpStatus.OK, respond(get(HttpHeaders.IF_MATCH, ETAG)).getStatusCode());
+        assertEquals(HttpStatus.OK, respond(get(HttpHeaders.IF_MATCH, "*")).getStatusCode());
+    }
+
+    @Test
+    void servesWholeFileWhenIfRangeDoesNotMatch() throws IOException {
+        MockHttpServletRequest request = get(HttpHeaders.RANGE, "bytes=0-9");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"other\"");
+
+        ResponseEntity<StreamingResponseBody> response = respond(request);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(content, body(response));
+    }
+
+    @Test
+    void servesRangeWhenIfRangeMatches() {
+        MockHttpServletRequest request = get(HttpHeaders.RANGE, "bytes=0-9");
+        request.addHeader(HttpHeaders.IF_RANGE, ETAG);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, respond(request).getStatusCode());
+    }
+
+    @Test
+    void headHasNoBody() {
+        MockHttpServletRequest request = new MockHttpServletRequest("HEAD", "/download");
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+
+        ResponseEntity<StreamingResponseBody> response = respond(request);
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals(10, response.getHeaders().getContentLength());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    void handsSingleRangeToSendfile() {
+        MockHttpServletRequest request = get(HttpHeaders.RANGE, "bytes=10-19");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+
+        ResponseEntity<StreamingResponseBody> response = respond(request);
+        assertNull(response.getBody());
+        assertEquals(10L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(20L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+    }
+
+    private ResponseEntity<StreamingResponseBody> respond(MockHttpServletRequest request) {
+        return responder.respond(file, DIGEST, request, new MockHttpServletResponse());
+    }
+
+    private static MockHttpServletRequest get() {
+        return new MockHttpServletRequest("GET", "/download");
+    }
+
+    private static MockHttpServletRequest get(String header, String value) {
+        MockHttpServletRequest request = get();
+        request.addHeader(header, value);
+        return request;
+    }
+
+    private static byte[] body(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,302 @@
+package com.pentryyy.fragmented_file_transfer_api.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.pentryyy.fragmented_file_transfer_api.component.KafkaTransmissionChannel;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.FileTaskStatus;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.SplitMode;
+import com.pentryyy.fragmented_file_transfer_api.model.FileTask;
+import com.pentryyy.fragmented_file_transfer_api.repository.LogOfProcessRepository;
+import com.pentryyy.fragmented_file_transfer_api.service.kafka.FileAssemblerManager;
+import com.pentryyy.fragmented_file_transfer_api.service.kafka.FileSplitterManager;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Chunk;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Feedback;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.HashedWheelTimer;
+import com.pentryyy.fragmented_file_transfer_api.transfer.serialization.ChunkDeserializer;
+import com.pentryyy.fragmented_file_transfer_api.transfer.serialization.ChunkSerializer;
+
+// Параллельные загрузки через FileService без Kafka и базы: чанки и обратная связь
+// идут через канал в памяти, записи задач хранятся в таблице вместо репозитория
+class FileServiceConcurrentUploadTest {
+
+    private static final int UPLOADS    = 8;
+    private static final int FILE_SIZE  = 300_000;
+    private static final int CHUNK_SIZE = 16_384;
+
+    private static final int BENCHMARK_FILE_SIZE  = 8 * 1024 * 1024;
+    private static final int BENCHMARK_CHUNK_SIZE = 64 * 1024;
+
+    private final Map<String, FileTask> tasks        = new ConcurrentHashMap<>();
+    private final List<String>          createdIds   = new ArrayList<>();
+    private final ChunkSerializer       serializer   = new ChunkSerializer();
+    private final ChunkDeserializer     deserializer = new ChunkDeserializer();
+
+    private HashedWheelTimer     timer;
+    private FileSplitterManager  splitterManager;
+    private FileAssemblerManager assemblerManager;
+    private FileService          fileService;
+
+    @BeforeEach
+    void createService() {
+        StagedFileRegistry stagedFileRegistry = new StagedFileRegistry();
+
+        timer           = new HashedWheelTimer("test-feedback-timer", 10, TimeUnit.MILLISECONDS, 512);
+        splitterManager = new FileSplitterManager(timer, stagedFileRegistry);
+
+        // Чанк проходит через сериализацию, как при отправке в топик
+        KafkaTransmissionChannel channel = new KafkaTransmissionChannel(null, null) {
+            @Override
+            public CompletableFuture<SendResult<String, Chunk>> sendChunk(Chunk chunk) {
+                Chunk received = deserializer.deserialize("file-chunks", serializer.serialize("file-chunks", chunk));
+                assemblerManager.getAssembler(received.getProcessingId()).receiveChunk(received);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public void sendFeedback(Feedback feedback) {
+                Thread.ofVirtual().start(() -> {
+                    var splitter = splitterManager.getSplitter(feedback.getProcessingId());
+                    if (splitter != null) {
+                        splitter.receiveFeedback(feedback);
+                    }
+                });
+            }
+        };
+        assemblerManager = new FileAssemblerManager(channel, timer, null);
+
+        FileContentIndex fileContentIndex = mock(FileContentIndex.class);
+        when(fileContentIndex.acquire(anyString(), anyLong(), any())).thenReturn(false);
+
+        fileService = new FileService();
+        ReflectionTestUtils.setField(fileService, "logOfProcessRepository", repository());
+        ReflectionTestUtils.setField(fileService, "fileContentIndex", fileContentIndex);
+        ReflectionTestUtils.setField(fileService, "stagedFileRegistry", stagedFileRegistry);
+        ReflectionTestUtils.setField(fileService, "channel", channel);
+        ReflectionTestUtils.setField(fileService, "splitterManager", splitterManager);
+        ReflectionTestUtils.setField(fileService, "assemblerManager", assemblerManager);
+    }
+
+    private LogOfProcessRepository repository() {
+        LogOfProcessRepository repository = mock(LogOfProcessRepository.class);
+
+        when(repository.save(any(FileTask.class))).thenAnswer(invocation -> {
+            FileTask task = invocation.getArgument(0);
+            tasks.put(task.getProcessingId(), task);
+            return task;
+        });
+        when(repository.findById(anyString())).thenAnswer(invocation ->
+            Optional.ofNullable(tasks.get(invocation.<String>getArgument(0)))
+        );
+        when(repository.findStatusById(anyString())).thenAnswer(invocation ->
+            Optional.ofNullable(tasks.get(invocation.<String>getArgument(0))).map(FileTask::getStatus)
+        );
+        doAnswer(invocation -> {
+            tasks.get(invocation.<String>getArgument(0)).setStatus(invocation.getArgument(1));
+            return null;
+        }).when(repository).updateStatusById(anyString(), any(FileTaskStatus.class));
+        doAnswer(invocation -> {
+            tasks.get(invocation.<String>getArgument(0)).setFileDigest(invocation.getArgument(1));
+            return null;
+        }).when(repository).updateFileDigestById(anyString(), anyString());
+        doAnswer(invocation -> {
+            tasks.get(invocation.<String>getArgument(0)).setTimestamp(invocation.getArgument(1));
+            return null;
+        }).when(repository).updateTimestampById(anyString(), any(LocalDateTime.class));
+        doAnswer(invocation -> {
+            tasks.remove(invocation.<String>getArgument(0));
+            return null;
+        }).when(repository).deleteById(anyString());
+
+        return repository;
+    }
+
+    @AfterEach
+    void cleanUp() {
+        for (String processingId : createdIds) {
+            if (tasks.containsKey(processingId)) {
+                fileService.deleteTask(processingId);
+            }
+        }
+        timer.close();
+    }
+
+    @Test
+    void concurrentUploadsKeepFilesAndStatusesSeparate() throws Exception {
+        byte[][] contents = new byte[UPLOADS][];
+        for (int i = 0; i < UPLOADS; i++) {
+            contents[i] = new byte[FILE_SIZE + i * 1_000];
+            new Random(i).nextBytes(contents[i]);
+        }
+
+        // Все загрузки принимаются до начала разбиения: файл одной не должен подменить файл другой
+        String[]        ids      = new String[UPLOADS];
+        CountDownLatch  accepted = new CountDownLatch(UPLOADS);
+        List<Future<?>> uploads  = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < UPLOADS; i++) {
+                int index = i;
+                uploads.add(executor.submit(() -> {
+                    MockMultipartFile file = new MockMultipartFile(
+                        "file", "upload-" + index + ".bin", "application/octet-stream", contents[index]
+                    );
+                    String processingId = fileService.initializingFileProcessing(
+                        file, CHUNK_SIZE, SplitMode.STREAM, CompressionType.NONE
+                    );
+                    ids[index] = processingId;
+
+                    accepted.countDown();
+                    accepted.await(30, TimeUnit.SECONDS);
+
+                    assertArrayEquals(contents[index], Files.readAllBytes(fileService.getStagedFile(processingId).toPath()));
+
+                    fileService.splittingFileIntoChunks(processingId);
+                    fileService.assembleFileFromChunks(processingId).get(60, TimeUnit.SECONDS);
+                    return null;
+                }));
+            }
+        } finally {
+            for (String processingId : ids) {
+                if (processingId != null) {
+                    createdIds.add(processingId);
+                }
+            }
+        }
+
+        for (Future<?> upload : uploads) {
+            upload.get();
+        }
+
+        assertEquals(UPLOADS, new HashSet<>(createdIds).size());
+
+        Set<String> digests = new HashSet<>();
+        for (int i = 0; i < UPLOADS; i++) {
+            FileTask task = tasks.get(ids[i]);
+
+            assertEquals(FileTaskStatus.ASSEMBLE_COMPLETED, fileService.getStatusById(ids[i]));
+            assertEquals("upload-" + i + ".bin", task.getOriginalName());
+            assertEquals(Long.valueOf(contents[i].length), task.getFileSize());
+            digests.add(task.getFileDigest());
+
+            File output = fileService.getOutputFile(ids[i]);
+            assertEquals("assembled_upload-" + i + ".bin", output.getName());
+            assertArrayEquals(contents[i], Files.readAllBytes(output.toPath()));
+        }
+        assertEquals(UPLOADS, digests.size());
+    }
+
+    @Test
+    void stagedFilesAreReleasedIndependently() throws Exception {
+        byte[] first  = "first upload".getBytes();
+        byte[] second = "second upload".getBytes();
+
+        String firstId = fileService.initializingFileProcessing(
+            new MockMultipartFile("file", "same.bin", null, first), CHUNK_SIZE, SplitMode.STREAM, CompressionType.NONE
+        );
+        createdIds.add(firstId);
+        String secondId = fileService.initializingFileProcessing(
+            new MockMultipartFile("file", "same.bin", null, second), CHUNK_SIZE, SplitMode.STREAM, CompressionType.NONE
+        );
+        createdIds.add(secondId);
+
+        assertNotEquals(firstId, secondId);
+
+        File firstStaged  = fileService.getStagedFile(firstId);
+        File secondStaged = fileService.getStagedFile(secondId);
+        assertNotEquals(firstStaged, secondStaged);
+
+        // Освобождение файла одной задачи не трогает файл другой с тем же именем
+        fileService.releaseStagedFile(firstId);
+        assertFalse(firstStaged.exists());
+        assertArrayEquals(second, Files.readAllBytes(secondStaged.toPath()));
+        assertEquals(FileTaskStatus.CREATED, fileService.getStatusById(secondId));
+    }
+
+    // Пропускная способность: UPLOADS загрузок через FileService одна за другой и одновременно.
+    // Замер долгий и запускается только явно: mvn test -Dtest=FileServiceConcurrentUploadTest -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void measureConcurrentUploadThroughput() throws Exception {
+        byte[] content = new byte[BENCHMARK_FILE_SIZE];
+        new Random(1).nextBytes(content);
+
+        // Первый прогон прогревает JIT и в зачет не идет
+        uploadAll(content, UPLOADS);
+
+        for (int concurrency : new int[] { 1, UPLOADS }) {
+            long start = System.nanoTime();
+            uploadAll(content, concurrency);
+            long wall  = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.printf(
+                "uploads=%d, concurrency=%d: %d ms, %.1f MB/s total%n",
+                UPLOADS, concurrency, wall,
+                (double) UPLOADS * BENCHMARK_FILE_SIZE / (1024 * 1024) * 1000 / Math.max(1, wall)
+            );
+        }
+    }
+
+    // UPLOADS загрузок, не больше concurrency одновременно; каждая проверяется по собранному файлу
+    private void uploadAll(byte[] content, int concurrency) throws Exception {
+        List<Future<?>> uploads = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(concurrency, Thread.ofVirtual().factory())) {
+            for (int i = 0; i < UPLOADS; i++) {
+                uploads.add(executor.submit(() -> {
+                    String processingId = fileService.initializingFileProcessing(
+                        new MockMultipartFile("file", "benchmark.bin", null, content),
+                        BENCHMARK_CHUNK_SIZE, SplitMode.STREAM, CompressionType.NONE
+                    );
+                    synchronized (createdIds) {
+                        createdIds.add(processingId);
+                    }
+
+                    fileService.splittingFileIntoChunks(processingId);
+                    fileService.assembleFileFromChunks(processingId).get(60, TimeUnit.SECONDS);
+
+                    assertEquals(content.length, fileService.getOutputFile(processingId).length());
+                    return null;
+                }));
+            }
+        }
+
+        for (Future<?> upload : uploads) {
+            upload.get();
+        }
+    }
+}
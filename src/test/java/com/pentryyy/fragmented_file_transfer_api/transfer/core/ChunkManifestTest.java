@@ -0,0 +1,89 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ChunkManifestTest {
+
+    @Test
+    void pageSequencesFollowControlSequences() {
+        assertEquals(-3, ChunkManifest.toPageSequence(0));
+        assertEquals(-4, ChunkManifest.toPageSequence(1));
+        assertEquals(1, ChunkManifest.toPageIndex(-4));
+        assertTrue(ChunkManifest.isPageSequence(-3));
+        assertFalse(ChunkManifest.isPageSequence(-2));
+        assertFalse(ChunkManifest.isPageSequence(-1));
+    }
+
+    @Test
+    void pageCountCoversAllChunks() {
+        assertEquals(1, ChunkManifest.getPageCount(0));
+        assertEquals(1, ChunkManifest.getPageCount(ChunkManifest.PAGE_ENTRIES));
+        assertEquals(2, ChunkManifest.getPageCount(ChunkManifest.PAGE_ENTRIES + 1));
+    }
+
+    @Test
+    void roundTripAcrossPages() {
+        int    chunks  = ChunkManifest.PAGE_ENTRIES + 5;
+        long[] offsets = new long[chunks + 1];
+        for (int i = 0; i < chunks; i++) {
+            offsets[i + 1] = offsets[i] + 1000 + i % 7;
+        }
+        byte[] hashes = new byte[chunks * ChunkManifest.HASH_LENGTH];
+        new Random(1).nextBytes(hashes);
+
+        for (int page = 0; page < ChunkManifest.getPageCount(chunks); page++) {
+            ChunkManifest.Page decoded = ChunkManifest.decodePage(ChunkManifest.encodePage(page, chunks, offsets, hashes));
+
+            int first = page * ChunkManifest.PAGE_ENTRIES;
+            int last  = Math.min(chunks, first + ChunkManifest.PAGE_ENTRIES);
+            assertEquals(2, decoded.pageCount());
+            assertEquals(first, decoded.first());
+            assertEquals(last - first, decoded.lengths().length);
+            for (int i = 0; i < decoded.lengths().length; i++) {
+                assertEquals(offsets[first + i + 1] - offsets[first + i], decoded.lengths()[i]);
+            }
+            assertArrayEquals(
+                Arrays.copyOfRange(hashes, first * ChunkManifest.HASH_LENGTH, last * ChunkManifest.HASH_LENGTH),
+                decoded.hashes()
+            );
+        }
+    }
+
+    @Test
+    void emptyFileIsOneEmptyPage() {
+        ChunkManifest.Page page = ChunkManifest.decodePage(ChunkManifest.encodePage(0, 0, new long[] { 0 }, new byte[0]));
+
+        assertEquals(1, page.pageCount());
+        assertEquals(0, page.first());
+        assertEquals(0, page.lengths().length);
+    }
+
+    @Test
+    void rejectsMalformedPages() {
+        byte[] valid = ChunkManifest.encodePage(0, 1, new long[] { 0, 10 }, new byte[ChunkManifest.HASH_LENGTH]);
+
+        assertThrows(IllegalArgumentException.class, () -> ChunkManifest.decodePage(new byte[3]));
+        assertThrows(IllegalArgumentException.class, () -> ChunkManifest.decodePage(Arrays.copyOf(valid, valid.length - 1)));
+        assertThrows(IllegalArgumentException.class, () -> ChunkManifest.decodePage(page(0, 0, 10)));
+        assertThrows(IllegalArgumentException.class, () -> ChunkManifest.decodePage(page(1, -1, 10)));
+        assertThrows(IllegalArgumentException.class, () -> ChunkManifest.decodePage(page(1, 0, 0)));
+    }
+
+    private static byte[] page(int pageCount, int first, int length) {
+        return ByteBuffer.allocate(4 + 4 + 4 + ChunkManifest.HASH_LENGTH)
+            .putInt(pageCount)
+            .putInt(first)
+            .putInt(length)
+            .array();
+    }
+}
@@ -0,0 +1,212 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.receiver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.support.SendResult;
+
+import com.pentryyy.fragmented_file_transfer_api.component.KafkaTransmissionChannel;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.SplitMode;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Chunk;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Feedback;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.HashedWheelTimer;
+import com.pentryyy.fragmented_file_transfer_api.transfer.sender.FileSplitter;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+// Емкость по одновременным медленным передачам: прежняя модель (пул из 200 потоков Tomcat,
+// каждый запрос запускает платформенный поток и ждет его) против виртуального потока на запрос.
+// Передача идет через FileSplitter и FileAssembler с задержкой брокера; виртуальные потоки
+// не должны закреплять поток-носитель внутри сборщика.
+// Запускается только явно: mvn test -Dtest=ConcurrentTransferLoadTest -Dbenchmark=true [-Dtransfers=2000]
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ConcurrentTransferLoadTest {
+
+    private static final int  TRANSFERS        = Integer.getInteger("transfers", 1000);
+    private static final int  FILE_SIZE        = 64 * 1024;
+    private static final int  CHUNK_SIZE       = 4 * 1024;
+    private static final long BROKER_LATENCY   = 200;
+    private static final int  TOMCAT_POOL_SIZE = 200;
+
+    // Общий таймер узла, как бин TimerConfig
+    private static final HashedWheelTimer TIMER = new HashedWheelTimer("load-feedback-timer", 100, TimeUnit.MILLISECONDS, 512);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void virtualThreadsRaiseConcurrentTransferCapacity() throws Exception {
+        File   source  = directory.resolve("source.bin").toFile();
+        byte[] content = new byte[FILE_SIZE];
+        new Random(1).nextBytes(content);
+        Files.write(source.toPath(), content);
+
+        Result platform = run(source, false);
+        Result virtual  = run(source, true);
+
+        System.out.printf(
+            "transfers=%d, broker latency %d ms%n"
+                + "  platform pool %d + thread per request: %d ms wall, %d peak platform threads%n"
+                + "  virtual thread per request:            %d ms wall, %d peak platform threads, %d carrier pins on FileAssembler locks%n",
+            TRANSFERS, BROKER_LATENCY,
+            TOMCAT_POOL_SIZE, platform.wallMillis(), platform.peakThreads(),
+            virtual.wallMillis(), virtual.peakThreads(), virtual.pinned()
+        );
+
+        assertEquals(TRANSFERS, platform.completed());
+        assertEquals(TRANSFERS, virtual.completed());
+        assertEquals(0, virtual.pinned());
+    }
+
+    private record Result(long wallMillis, int peakThreads, int completed, int pinned) {}
+
+    private Result run(File source, boolean virtualThreads) throws Exception {
+        Map<String, FileAssembler> assemblers = new ConcurrentHashMap<>();
+        Map<String, FileSplitter>  splitters  = new ConcurrentHashMap<>();
+
+        // Брокер: запись доходит до получателя с задержкой, обратная связь - на своем потоке
+        ExecutorService delivery = Executors.newVirtualThreadPerTaskExecutor();
+        Executor        broker   = CompletableFuture.delayedExecutor(BROKER_LATENCY, TimeUnit.MILLISECONDS, delivery);
+        KafkaTransmissionChannel channel = new KafkaTransmissionChannel(null, null) {
+            @Override
+            public CompletableFuture<SendResult<String, Chunk>> sendChunk(Chunk chunk) {
+                broker.execute(() -> assemblers.get(chunk.getProcessingId()).receiveChunk(chunk));
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public void sendFeedback(Feedback feedback) {
+                broker.execute(() -> {
+                    FileSplitter splitter = splitters.get(feedback.getProcessingId());
+                    if (splitter != null) {
+                        splitter.receiveFeedback(feedback);
+                    }
+                });
+            }
+        };
+
+        AtomicInteger  completed = new AtomicInteger();
+        AtomicInteger  pinned    = new AtomicInteger();
+        CountDownLatch done      = new CountDownLatch(TRANSFERS);
+
+        // Запрос: разбиение и ожидание сборки, как загрузка с последующим скачиванием
+        Runnable transfer = () -> {
+            String processingId = UUID.randomUUID().toString();
+            Path   output       = directory.resolve(processingId);
+            try {
+                FileAssembler assembler = new FileAssembler(processingId, channel, TIMER, output.resolveSibling(processingId + ".part").toFile());
+                FileSplitter  splitter  = new FileSplitter(processingId, FILE_SIZE / CHUNK_SIZE, CompressionType.NONE, channel);
+                assemblers.put(processingId, assembler);
+                splitters.put(processingId, splitter);
+
+                splitter.splitFile(source, CHUNK_SIZE, SplitMode.STREAM);
+                assembler.assembleFile(output.toString()).join();
+
+                if (Files.size(output) == FILE_SIZE) {
+                    completed.incrementAndGet();
+                }
+                splitter.close();
+                Files.deleteIfExists(output);
+            } catch (Exception e) {
+                System.err.println("Transfer failed (id " + processingId + "): " + e.getMessage());
+            } finally {
+                splitters.remove(processingId);
+                assemblers.remove(processingId);
+                done.countDown();
+            }
+        };
+
+        ExecutorService requests = virtualThreads
+            ? Executors.newVirtualThreadPerTaskExecutor()
+            : Executors.newFixedThreadPool(TOMCAT_POOL_SIZE);
+
+        ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger            peak    = new AtomicInteger();
+        monitor.scheduleAtFixedRate(
+            () -> peak.accumulateAndGet(ManagementFactory.getThreadMXBean().getThreadCount(), Math::max),
+            0, 10, TimeUnit.MILLISECONDS
+        );
+
+        try (RecordingStream pins = new RecordingStream()) {
+            // Поток-носитель закрепляется и при парковке внутри монитора, и на входе в занятый монитор
+            pins.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            pins.enable("jdk.JavaMonitorEnter").withThreshold(Duration.ZERO).withStackTrace();
+            pins.onEvent(event -> {
+                if (event.getThread() != null && event.getThread().isVirtual() && isAssemblerPin(event)) {
+                    pinned.incrementAndGet();
+                }
+            });
+            pins.startAsync();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < TRANSFERS; i++) {
+                if (virtualThreads) {
+                    requests.execute(transfer);
+                } else {
+
+                    // Прежний контроллер: поток запроса запускает платформенный поток и ждет его
+                    requests.execute(() -> {
+                        Thread worker = new Thread(transfer);
+                        worker.start();
+                        try {
+                            worker.join();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                }
+            }
+            done.await(10, TimeUnit.MINUTES);
+            long wall = (System.nanoTime() - start) / 1_000_000;
+
+            // События закрепления доходят до потока с задержкой
+            Thread.sleep(1_000);
+            return new Result(wall, peak.get(), completed.get(), pinned.get());
+        } finally {
+            monitor.shutdownNow();
+            requests.shutdownNow();
+            delivery.shutdownNow();
+        }
+    }
+
+    // Вход в монитор учитывается, только если его захватывает сам сборщик: мониторы JDK
+    // (загрузка классов, регистрация файла в Cleaner) к блокировкам сборщика не относятся
+    private static boolean isAssemblerPin(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return false;
+        }
+
+        List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        return event.getEventType().getName().equals("jdk.JavaMonitorEnter")
+            ? !frames.isEmpty() && isAssemblerFrame(frames.get(0))
+            : frames.stream().anyMatch(ConcurrentTransferLoadTest::isAssemblerFrame);
+    }
+
+    private static boolean isAssemblerFrame(RecordedFrame frame) {
+        return frame.getMethod() != null && frame.getMethod().getType().getName().equals(FileAssembler.class.getName());
+    }
+}
@@ -0,0 +1,172 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.sender;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.ChunkManifest;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Integrity;
+
+class ContentDefinedChunkerTest {
+
+    private static final int AVERAGE_SIZE = 8 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void averageSizeIsRoundedToPowerOfTwoAndClamped() {
+        assertEquals(64 * 1024, new ContentDefinedChunker(100_000).getAverageSize());
+        assertEquals(ContentDefinedChunker.MIN_AVERAGE_SIZE, new ContentDefinedChunker(1).getAverageSize());
+        assertEquals(ContentDefinedChunker.MAX_AVERAGE_SIZE, new ContentDefinedChunker(Integer.MAX_VALUE).getAverageSize());
+    }
+
+    @Test
+    void emptyFileHasNoChunks() throws IOException {
+        ContentDefinedChunker.Layout layout = split(new byte[0]);
+
+        assertEquals(0, layout.count());
+        assertArrayEquals(new long[] { 0 }, layout.offsets());
+        assertEquals(0, layout.hashes().length);
+        assertEquals(0, layout.maxLength());
+    }
+
+    @Test
+    void fileShorterThanMinimumIsOneChunk() throws IOException {
+        byte[] data = random(100, 1);
+
+        ContentDefinedChunker.Layout layout = split(data);
+        assertEquals(1, layout.count());
+        assertArrayEquals(new long[] { 0, 100 }, layout.offsets());
+        assertEquals(100, layout.maxLength());
+    }
+
+    @Test
+    void chunksCoverFileWithinSizeBounds() throws Exception {
+        // Больше буфера чтения: границы ищутся и на стыках прочитанных блоков
+        byte[]        data       = random(3 * 1024 * 1024 + 123, 2);
+        MessageDigest fileDigest = Integrity.newFileDigest();
+
+        ContentDefinedChunker.Layout layout = split(data, fileDigest);
+        long[]                       offsets = layout.offsets();
+
+        assertEquals(layout.count() + 1, offsets.length);
+        assertEquals(0, offsets[0]);
+        assertEquals(data.length, offsets[layout.count()]);
+
+        int longest = 0;
+        for (int i = 0; i < layout.count(); i++) {
+            int length = (int) (offsets[i + 1] - offsets[i]);
+            longest = Math.max(longest, length);
+
+            assertTrue(length <= AVERAGE_SIZE * 8, "chunk #" + i + " is " + length + " bytes");
+            if (i < layout.count() - 1) {
+                assertTrue(length >= AVERAGE_SIZE / 4, "chunk #" + i + " is " + length + " bytes");
+            }
+
+            byte[] expected = MessageDigest.getInstance("SHA-256").digest(Arrays.copyOfRange(data, (int) offsets[i], (int) offsets[i + 1]));
+            assertArrayEquals(expected, hashOf(layout, i), "hash of chunk #" + i);
+        }
+        assertEquals(longest, layout.maxLength());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(data), fileDigest.digest());
+
+        // Средний размер близок к заданному
+        double average = (double) data.length / layout.count();
+        assertTrue(average > AVERAGE_SIZE / 2.0 && average < AVERAGE_SIZE * 2.0, "average " + average);
+    }
+
+    @Test
+    void lowEntropyDataIsCutAtMaximumSize() throws IOException {
+        ContentDefinedChunker.Layout layout = split(new byte[1024 * 1024]);
+
+        for (int i = 0; i < layout.count(); i++) {
+            assertTrue(layout.offsets()[i + 1] - layout.offsets()[i] <= AVERAGE_SIZE * 8);
+        }
+    }
+
+    @Test
+    void sameContentGivesSameLayout() throws IOException {
+        byte[] data = random(512 * 1024, 3);
+
+        ContentDefinedChunker.Layout first  = split(data);
+        ContentDefinedChunker.Layout second = split(data.clone());
+        assertArrayEquals(first.offsets(), second.offsets());
+        assertArrayEquals(first.hashes(), second.hashes());
+    }
+
+    @Test
+    void insertionShiftsOnlyNearbyBoundaries() throws IOException {
+        byte[] original = random(2 * 1024 * 1024, 4);
+        int    at       = original.length / 2;
+        byte[] inserted = random(100, 5);
+
+        byte[] edited = new byte[original.length + inserted.length];
+        System.arraycopy(original, 0, edited, 0, at);
+        System.arraycopy(inserted, 0, edited, at, inserted.length);
+        System.arraycopy(original, at, edited, at + inserted.length, original.length - at);
+
+        ContentDefinedChunker.Layout before = split(original);
+        ContentDefinedChunker.Layout after  = split(edited);
+
+        Set<Long> boundaries = new HashSet<>();
+        for (long offset : after.offsets()) {
+            boundaries.add(offset);
+        }
+
+        // До правки границы совпадают, после - сдвинуты на длину вставки
+        // (за исключением ближайших к правке, в пределах максимального размера чанка)
+        for (long offset : before.offsets()) {
+            if (offset <= at) {
+                assertTrue(boundaries.contains(offset), "boundary " + offset);
+            } else if (offset > at + AVERAGE_SIZE * 8L) {
+                assertTrue(boundaries.contains(offset + inserted.length), "boundary " + offset);
+            }
+        }
+
+        Set<String> hashes = new HashSet<>();
+        for (int i = 0; i < before.count(); i++) {
+            hashes.add(Arrays.toString(hashOf(before, i)));
+        }
+        int shared = 0;
+        for (int i = 0; i < after.count(); i++) {
+            if (hashes.contains(Arrays.toString(hashOf(after, i)))) {
+                shared++;
+            }
+        }
+        assertTrue(shared >= after.count() - 3, shared + " of " + after.count() + " chunks shared");
+    }
+
+    private ContentDefinedChunker.Layout split(byte[] data) throws IOException {
+        return split(data, Integrity.newFileDigest());
+    }
+
+    private ContentDefinedChunker.Layout split(byte[] data, MessageDigest fileDigest) throws IOException {
+        Path file = Files.write(Files.createTempFile(directory, "cdc", ".bin"), data);
+        try (FileChannel channel = FileChannel.open(file)) {
+            return new ContentDefinedChunker(AVERAGE_SIZE).split(channel, fileDigest);
+        }
+    }
+
+    private static byte[] hashOf(ContentDefinedChunker.Layout layout, int index) {
+        return Arrays.copyOfRange(layout.hashes(), index * ChunkManifest.HASH_LENGTH, (index + 1) * ChunkManifest.HASH_LENGTH);
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,168 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.sender;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.support.SendResult;
+
+import com.pentryyy.fragmented_file_transfer_api.component.KafkaTransmissionChannel;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
+import com.pentryyy.fragmented_file_transfer_api.enumeration.SplitMode;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Chunk;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Feedback;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.HashedWheelTimer;
+import com.pentryyy.fragmented_file_transfer_api.transfer.receiver.FileAssembler;
+
+// Параллельное разбиение при 1..16 потоках на загрузку: несколько одновременных загрузок
+// через FileSplitter и FileAssembler без Kafka. Пропускная способность и пик потоков
+// платформы: потоки областей виртуальные, чтение ограничено общим семафором узла.
+// Запускается только явно: mvn test -Dtest=ParallelSplitBenchmarkTest -Dbenchmark=true [-Duploads=8]
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ParallelSplitBenchmarkTest {
+
+    private static final int   UPLOADS    = Integer.getInteger("uploads", 4);
+    private static final int   FILE_SIZE  = 64 * 1024 * 1024;
+    private static final int   CHUNK_SIZE = 64 * 1024;
+    private static final int[] WORKERS    = { 1, 2, 4, 8, 16 };
+
+    private static final HashedWheelTimer TIMER = new HashedWheelTimer("split-feedback-timer", 10, TimeUnit.MILLISECONDS, 512);
+
+    @TempDir
+    Path directory;
+
+    @AfterAll
+    static void closeTimer() {
+        TIMER.close();
+    }
+
+    @Test
+    void measureParallelSplit() throws Exception {
+        File source = directory.resolve("source.bin").toFile();
+        try (OutputStream output = Files.newOutputStream(source.toPath())) {
+            Random random = new Random(1);
+            byte[] block  = new byte[1024 * 1024];
+            for (int written = 0; written < FILE_SIZE; written += block.length) {
+                random.nextBytes(block);
+                output.write(block);
+            }
+        }
+
+        // Первый прогон прогревает JIT и в зачет не идет
+        run(source, WORKERS[WORKERS.length - 1]);
+
+        for (int workers : WORKERS) {
+            Result result = run(source, workers);
+            System.out.printf(
+                "uploads=%d, workers=%2d: %6d ms, %7.1f MB/s total, %d peak platform threads%n",
+                UPLOADS, workers, result.wallMillis(),
+                (double) UPLOADS * FILE_SIZE / (1024 * 1024) * 1000 / Math.max(1, result.wallMillis()),
+                result.peakThreads()
+            );
+            assertEquals(UPLOADS, result.completed());
+        }
+    }
+
+    private record Result(long wallMillis, int peakThreads, int completed) {}
+
+    private Result run(File source, int workers) throws Exception {
+        Map<String, FileAssembler> assemblers = new ConcurrentHashMap<>();
+        Map<String, FileSplitter>  splitters  = new ConcurrentHashMap<>();
+
+        // Чанк доходит до сборщика сразу, обратная связь - на своем потоке
+        KafkaTransmissionChannel channel = new KafkaTransmissionChannel(null, null) {
+            @Override
+            public CompletableFuture<SendResult<String, Chunk>> sendChunk(Chunk chunk) {
+                assemblers.get(chunk.getProcessingId()).receiveChunk(chunk);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public void sendFeedback(Feedback feedback) {
+                Thread.ofVirtual().start(() -> {
+                    FileSplitter splitter = splitters.get(feedback.getProcessingId());
+                    if (splitter != null) {
+                        splitter.receiveFeedback(feedback);
+                    }
+                });
+            }
+        };
+
+        ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger            peak    = new AtomicInteger();
+        monitor.scheduleAtFixedRate(
+            () -> peak.accumulateAndGet(ManagementFactory.getThreadMXBean().getThreadCount(), Math::max),
+            0, 10, TimeUnit.MILLISECONDS
+        );
+
+        AtomicInteger   completed = new AtomicInteger();
+        List<Future<?>> uploads   = new ArrayList<>();
+        long            start     = System.nanoTime();
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < UPLOADS; i++) {
+                uploads.add(requests.submit(() -> {
+                    transfer(source, workers, channel, assemblers, splitters);
+                    completed.incrementAndGet();
+                    return null;
+                }));
+            }
+        } finally {
+            monitor.shutdownNow();
+        }
+        long wall = (System.nanoTime() - start) / 1_000_000;
+
+        for (Future<?> upload : uploads) {
+            upload.get();
+        }
+        return new Result(wall, peak.get(), completed.get());
+    }
+
+    private void transfer(
+        File source,
+        int workers,
+        KafkaTransmissionChannel channel,
+        Map<String, FileAssembler> assemblers,
+        Map<String, FileSplitter> splitters
+    ) throws IOException {
+        String processingId = UUID.randomUUID().toString();
+        Path   output       = directory.resolve(processingId);
+
+        FileAssembler assembler = new FileAssembler(processingId, channel, TIMER, output.resolveSibling(processingId + ".part").toFile());
+        FileSplitter  splitter  = new FileSplitter(processingId, FILE_SIZE / CHUNK_SIZE, CompressionType.NONE, channel);
+        assemblers.put(processingId, assembler);
+        splitters.put(processingId, splitter);
+        try {
+            splitter.splitFile(source, CHUNK_SIZE, SplitMode.PARALLEL, workers);
+            assembler.assembleFile(output.toString()).join();
+
+            assertEquals(FILE_SIZE, Files.size(output));
+        } finally {
+            splitter.close();
+            splitters.remove(processingId);
+            assemblers.remove(processingId);
+            Files.deleteIfExists(output);
+        }
+    }
+}
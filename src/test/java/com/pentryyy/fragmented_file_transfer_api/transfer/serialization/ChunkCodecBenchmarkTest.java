@@ -0,0 +1,94 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.serialization;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Chunk;
+
+// Сравнение бинарного формата чанка с прежней передачей через JSON.
+// Замер времени долгий и запускается только явно: mvn test -Dtest=ChunkCodecBenchmarkTest -Dbenchmark=true
+class ChunkCodecBenchmarkTest {
+
+    private static final String TOPIC         = "file-chunks";
+    private static final String PROCESSING_ID = UUID.randomUUID().toString();
+    private static final int[]  PAYLOAD_SIZES = { 1_024, 65_536, 1_048_576 };
+    private static final int    ROUNDS        = 5;
+
+    private final ChunkSerializer         binarySerializer   = new ChunkSerializer();
+    private final ChunkDeserializer       binaryDeserializer = new ChunkDeserializer();
+    private final JsonSerializer<Chunk>   jsonSerializer     = new JsonSerializer<>();
+    private final JsonDeserializer<Chunk> jsonDeserializer   = new JsonDeserializer<>(Chunk.class, false);
+
+    private static Chunk chunk(int payloadSize) {
+        byte[] payload = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(payload);
+        return new Chunk(42, payload, PROCESSING_ID);
+    }
+
+    @Test
+    void binaryRecordIsSmallerThanJson() {
+        for (int payloadSize : PAYLOAD_SIZES) {
+            Chunk chunk = chunk(payloadSize);
+
+            byte[] binary = binarySerializer.serialize(TOPIC, chunk);
+            byte[] json   = jsonSerializer.serialize(TOPIC, chunk);
+
+            // Оба пути возвращают те же байты, бинарный - без base64 и имен полей
+            assertArrayEquals(chunk.toByteArray(), binaryDeserializer.deserialize(TOPIC, binary).toByteArray());
+            assertArrayEquals(chunk.toByteArray(), jsonDeserializer.deserialize(TOPIC, json).toByteArray());
+            assertTrue(binary.length < json.length, "payload " + payloadSize + ": " + binary.length + " >= " + json.length);
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void measureRoundTrip() {
+        for (int payloadSize : PAYLOAD_SIZES) {
+            Chunk chunk      = chunk(payloadSize);
+            int   iterations = Math.max(200, 64 * 1_048_576 / payloadSize);
+
+            Result json   = measure(chunk, iterations, jsonSerializer, jsonDeserializer);
+            Result binary = measure(chunk, iterations, binarySerializer, binaryDeserializer);
+
+            System.out.printf(
+                "payload=%d B: json %d B/rec %.2f us/rec | binary %d B/rec %.2f us/rec%n",
+                payloadSize, json.recordBytes(), json.micros(), binary.recordBytes(), binary.micros()
+            );
+        }
+    }
+
+    private record Result(int recordBytes, double micros) {}
+
+    // Сериализация и разбор одной записи; первые раунды прогревают JIT, в зачет идет лучший
+    private static Result measure(
+        Chunk chunk,
+        int iterations,
+        Serializer<Chunk> serializer,
+        Deserializer<Chunk> deserializer
+    ) {
+        int  recordBytes = serializer.serialize(TOPIC, chunk).length;
+        long best        = Long.MAX_VALUE;
+        long sink        = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += deserializer.deserialize(TOPIC, serializer.serialize(TOPIC, chunk)).getSequenceNumber();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        assertTrue(sink > 0);
+        return new Result(recordBytes, best / 1e3 / iterations);
+    }
+}
@@ -0,0 +1,124 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.serialization;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import com.pentryyy.fragmented_file_transfer_api.enumeration.CompressionType;
+import com.pentryyy.fragmented_file_transfer_api.transfer.compression.ChunkCompression;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Chunk;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Integrity;
+
+class ChunkSerializationTest {
+
+    private static final String PROCESSING_ID = UUID.randomUUID().toString();
+
+    private final ChunkSerializer   serializer   = new ChunkSerializer();
+    private final ChunkDeserializer deserializer = new ChunkDeserializer();
+
+    @Test
+    void roundTripKeepsHeaderAndPayload() {
+        byte[] data  = randomBytes(1000);
+        Chunk  chunk = new Chunk(42, data, PROCESSING_ID);
+
+        byte[] wire = serializer.serialize("file-chunks", chunk);
+        assertEquals(ChunkSerializer.VERSION, wire[0]);
+        assertEquals(ChunkSerializer.HEADER_SIZE + data.length, wire.length);
+
+        Chunk restored = deserializer.deserialize("file-chunks", wire);
+        assertEquals(42, restored.getSequenceNumber());
+        assertEquals(PROCESSING_ID, restored.getProcessingId());
+        assertEquals(CompressionType.NONE, restored.getCompression());
+        assertEquals(data.length, restored.getOriginalLength());
+        assertEquals(chunk.getChecksum(), restored.getChecksum());
+        assertArrayEquals(data, restored.toByteArray());
+        assertTrue(Integrity.isIntact(restored));
+    }
+
+    @Test
+    void roundTripKeepsNegativeControlSequences() {
+        for (int sequence : new int[] { -1, -2, -3, Integer.MIN_VALUE }) {
+            byte[] meta  = "10:65536:655360".getBytes(StandardCharsets.UTF_8);
+            Chunk  chunk = deserializer.deserialize("file-chunks", serializer.serialize("file-chunks", new Chunk(sequence, meta, PROCESSING_ID)));
+
+            assertEquals(sequence, chunk.getSequenceNumber());
+            assertArrayEquals(meta, chunk.toByteArray());
+        }
+    }
+
+    @Test
+    void roundTripKeepsEmptyPayload() {
+        Chunk chunk = deserializer.deserialize("file-chunks", serializer.serialize("file-chunks", new Chunk(0, new byte[0], PROCESSING_ID)));
+
+        assertEquals(0, chunk.getData().remaining());
+        assertTrue(Integrity.isIntact(chunk));
+    }
+
+    @Test
+    void compressedChecksumIsVerifiedBeforeDecompression() {
+        byte[] data       = repetitiveBytes(64 * 1024);
+        Chunk  compressed = ChunkCompression.compress(new Chunk(7, data, PROCESSING_ID), CompressionType.LZ4);
+        assertTrue(compressed.isCompressed());
+
+        byte[] wire     = serializer.serialize("file-chunks", compressed);
+        Chunk  restored = deserializer.deserialize("file-chunks", wire);
+        assertTrue(Integrity.isIntact(restored));
+        assertArrayEquals(data, ChunkCompression.decompress(restored, data.length).toByteArray());
+
+        // Поврежденный сжатый байт отсекается CRC32C, до распаковки дело не доходит
+        wire[wire.length - 1] ^= 0x01;
+        assertFalse(Integrity.isIntact(deserializer.deserialize("file-chunks", wire)));
+    }
+
+    @Test
+    void decompressionRejectsOriginalLengthAboveLimit() {
+        byte[] data       = repetitiveBytes(64 * 1024);
+        Chunk  compressed = ChunkCompression.compress(new Chunk(7, data, PROCESSING_ID), CompressionType.DEFLATE);
+
+        assertThrows(IllegalStateException.class, () -> ChunkCompression.decompress(compressed, data.length - 1));
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] wire = serializer.serialize("file-chunks", new Chunk(0, randomBytes(10), PROCESSING_ID));
+        wire[0] = 99;
+
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("file-chunks", wire));
+    }
+
+    @Test
+    void rejectsTruncatedAndEmptyRecords() {
+        byte[] wire = serializer.serialize("file-chunks", new Chunk(0, randomBytes(10), PROCESSING_ID));
+
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("file-chunks", new byte[0]));
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("file-chunks", Arrays.copyOf(wire, ChunkSerializer.HEADER_SIZE - 1)));
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("file-chunks", Arrays.copyOf(wire, wire.length - 1)));
+        assertNull(deserializer.deserialize("file-chunks", null));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] repetitiveBytes(int length) {
+        byte[] pattern = "2024-01-01 12:00:00 INFO request served\n".getBytes(StandardCharsets.UTF_8);
+        byte[] bytes   = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = pattern[i % pattern.length];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,132 @@
+package com.pentryyy.fragmented_file_transfer_api.transfer.serialization;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.Feedback;
+import com.pentryyy.fragmented_file_transfer_api.transfer.core.SequenceRanges;
+
+class FeedbackSerializationTest {
+
+    private static final String PROCESSING_ID = UUID.randomUUID().toString();
+
+    private final FeedbackSerializer   serializer   = new FeedbackSerializer();
+    private final FeedbackDeserializer deserializer = new FeedbackDeserializer();
+
+    @Test
+    void roundTripKeepsRangesHorizonAndWanted() {
+        SequenceRanges missing = SequenceRanges.builder()
+            .addRange(-2, 0)
+            .addRange(5, 9)
+            .add(200)
+            .addRange(1_000_000, 1_000_128)
+            .build();
+        SequenceRanges wanted = SequenceRanges.of(1, 2, 3, 70);
+
+        Feedback restored = roundTrip(new Feedback(PROCESSING_ID, 2_000_000, missing, 1_500_000, wanted));
+
+        assertEquals(PROCESSING_ID, restored.getProcessingId());
+        assertEquals(2_000_000, restored.getTotalChunks());
+        assertEquals(1_500_000, restored.getHorizon());
+        assertRanges(missing, restored.getMissingSequences());
+        assertRanges(wanted, restored.getWantedSequences());
+    }
+
+    @Test
+    void roundTripKeepsNegativeFirstStart() {
+        // Служебные номера отрицательны: начало первого диапазона кодируется zigzag
+        for (int start : new int[] { -1, -2, -3, -16_387, Integer.MIN_VALUE + 1 }) {
+            SequenceRanges missing = SequenceRanges.builder().addRange(start, start + 1).build();
+
+            assertRanges(missing, roundTrip(new Feedback(PROCESSING_ID, -1, missing)).getMissingSequences());
+        }
+    }
+
+    @Test
+    void roundTripKeepsEmptyRanges() {
+        Feedback restored = roundTrip(new Feedback(PROCESSING_ID, 10, SequenceRanges.empty()));
+
+        assertTrue(restored.getMissingSequences().isEmpty());
+        assertEquals(10, restored.getHorizon());
+        assertNull(restored.getWantedSequences());
+        assertFalse(restored.isProgress());
+    }
+
+    @Test
+    void distinguishesProgressFromLosslessFeedback() {
+        // Оба сообщения без пропусков и с той же границей, отличаются только флагом
+        Feedback progress = roundTrip(Feedback.progress(PROCESSING_ID, 100, 40, null));
+        Feedback lossless = roundTrip(new Feedback(PROCESSING_ID, 100, SequenceRanges.empty(), 40));
+
+        assertTrue(progress.isProgress());
+        assertEquals(40, progress.getHorizon());
+        assertTrue(progress.getMissingSequences().isEmpty());
+        assertFalse(lossless.isProgress());
+    }
+
+    @Test
+    void distinguishesEmptyWantedFromAbsent() {
+        Feedback restored = roundTrip(new Feedback(PROCESSING_ID, 10, SequenceRanges.empty(), 10, SequenceRanges.empty()));
+
+        assertTrue(restored.getWantedSequences() != null && restored.getWantedSequences().isEmpty());
+    }
+
+    @Test
+    void rangesAreVarintEncoded() {
+        SequenceRanges missing = SequenceRanges.builder().addRange(0, 100_000).build();
+        byte[]         wire    = serializer.serialize("file-feedbacks", new Feedback(PROCESSING_ID, 100_000, missing));
+
+        // Один диапазон: zigzag-начало в 1 байт и длина в 3 байта
+        assertEquals(FeedbackSerializer.HEADER_SIZE + 1 + 3 + 4, wire.length);
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] wire = serializer.serialize("file-feedbacks", new Feedback(PROCESSING_ID, 10, SequenceRanges.of(1)));
+        wire[0] = 0;
+
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("file-feedbacks", wire));
+    }
+
+    @Test
+    void rejectsTruncatedRecords() {
+        byte[] wire = serializer.serialize("file-feedbacks", new Feedback(PROCESSING_ID, 10, SequenceRanges.of(1, 5), 10, SequenceRanges.of(2)));
+
+        for (int length = 0; length < wire.length; length++) {
+            byte[] truncated = Arrays.copyOf(wire, length);
+            assertThrows(SerializationException.class, () -> deserializer.deserialize("file-feedbacks", truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void builderMergesAdjacentAndRejectsDescending() {
+        SequenceRanges ranges = SequenceRanges.builder().add(1).add(2).addRange(3, 5).addRange(7, 7).build();
+
+        assertEquals(1, ranges.getRangeCount());
+        assertEquals(4, ranges.size());
+        assertTrue(ranges.contains(4));
+        assertFalse(ranges.contains(5));
+        assertThrows(IllegalArgumentException.class, () -> SequenceRanges.builder().addRange(5, 10).addRange(8, 12));
+    }
+
+    private Feedback roundTrip(Feedback feedback) {
+        return deserializer.deserialize("file-feedbacks", serializer.serialize("file-feedbacks", feedback));
+    }
+
+    private static void assertRanges(SequenceRanges expected, SequenceRanges actual) {
+        assertEquals(expected.getRangeCount(), actual.getRangeCount());
+        for (int i = 0; i < expected.getRangeCount(); i++) {
+            assertEquals(expected.getStart(i), actual.getStart(i));
+            assertEquals(expected.getEnd(i), actual.getEnd(i));
+        }
+    }
+}